@@ -0,0 +1,216 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * The class <b>BoardCanvas</b> draws the whole board in a single
+ * component, for boards too large for a grid of <b>DotButton</b>. It
+ * is meant to be shown in a JScrollPane: only the dots in the visible
+ * part of the board are painted, so the cost of a repaint does not
+ * depend on the size of the board.
+ *
+ * The canvas keeps the icons of the dots itself, updated from the
+ * <b>ChangeSet</b> made by the thread playing the game, so painting
+ * never reads the model while a move is played.
+ *
+ * The mouse events are mapped to dots by the canvas itself: a left
+ * click uncovers a dot, a right click flags it, a middle click chords
+ * on it (see <b>GameEngine.chord</b>). The mouse wheel with
+ * the control key down zooms in and out, through the sizes of
+ * <b>IconAtlas</b>.
+ */
+public class BoardCanvas extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final GameModel gameModel;
+    private final IconAtlas atlas;
+    private final byte[] icons;
+    private int zoom;
+    private int dotSize;
+    private int pressed = -1;
+
+    /**
+     * Constructor, creates a canvas drawing the board of a model, and
+     * sending the clicks to a controller
+     *
+     * @param gameModel
+     *            the model of the game
+     * @param gameController
+     *            the controller
+     */
+    public BoardCanvas(GameModel gameModel, GameController gameController) {
+        this.gameModel = gameModel;
+        this.atlas = IconAtlas.get();
+        this.icons = new byte[gameModel.getWidth() * gameModel.getHeigth()];
+        for (int j = 0; j < gameModel.getHeigth(); j++) {
+            for (int i = 0; i < gameModel.getWidth(); i++) {
+                icons[j * gameModel.getWidth() + i] = (byte) GameView.getIcon(gameModel, i, j);
+            }
+        }
+        this.zoom = IconAtlas.SIZES.length - 1;
+        while (IconAtlas.SIZES[zoom] != IconAtlas.ICON_SIZE) {
+            zoom--;
+        }
+        this.dotSize = IconAtlas.SIZES[zoom];
+        setOpaque(true);
+        MouseAdapter mouse = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                int cell = cellAt(e);
+                if (cell < 0) {
+                    return;
+                }
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    gameController.flag(cell % gameModel.getWidth(), cell / gameModel.getWidth());
+                }
+                else if (SwingUtilities.isMiddleMouseButton(e)) {
+                    gameController.chord(cell % gameModel.getWidth(), cell / gameModel.getWidth());
+                }
+                else if (SwingUtilities.isLeftMouseButton(e)) {
+                    pressed = cell;
+                }
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                // like a button: the dot is uncovered if the mouse is released on it
+                int cell = cellAt(e);
+                if (SwingUtilities.isLeftMouseButton(e) && cell >= 0 && cell == pressed) {
+                    gameController.reveal(cell % gameModel.getWidth(), cell / gameModel.getWidth());
+                }
+                pressed = -1;
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    setZoom(zoom - e.getWheelRotation());
+                }
+                else {
+                    // let the scroll pane scroll
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(BoardCanvas.this, e, getParent()));
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Changes the size of the dots, keeping them to one of the sizes of
+     * <b>IconAtlas</b>
+     *
+     * @param zoom
+     *            the index of the size in IconAtlas.SIZES
+     */
+    public void setZoom(int zoom) {
+        this.zoom = Math.max(0, Math.min(zoom, IconAtlas.SIZES.length - 1));
+        if (IconAtlas.SIZES[this.zoom] != dotSize) {
+            dotSize = IconAtlas.SIZES[this.zoom];
+            revalidate();
+            repaint();
+        }
+    }
+
+    /**
+     * Sets the icons of the dots of a change set, and repaints them at
+     * once: the rectangle holding all of them is repainted, clipped to
+     * the visible part of the board. Must be called on the event
+     * dispatch thread.
+     *
+     * @param changes
+     *            the dots changed and their icons
+     * @return false if the set changed the whole board, and the board
+     *            changed again since: the icons are then left as they were
+     */
+    public boolean setIcons(ChangeSet changes) {
+        if (changes.isAll()) {
+            if (!changes.getIcons(icons)) {
+                return false;
+            }
+            repaint();
+            return true;
+        }
+        if (changes.size() == 0) {
+            return true;
+        }
+        int width = gameModel.getWidth();
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = -1;
+        int bottom = -1;
+        for (int k = 0; k < changes.size(); k++) {
+            int cell = changes.getCell(k);
+            icons[cell] = (byte) changes.getIcon(k);
+            int i = cell % width;
+            int j = cell / width;
+            left = Math.min(left, i);
+            right = Math.max(right, i);
+            top = Math.min(top, j);
+            bottom = Math.max(bottom, j);
+        }
+        repaint(left * dotSize, top * dotSize, (right - left + 1) * dotSize, (bottom - top + 1) * dotSize);
+        return true;
+    }
+
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstColumn = Math.max(clip.x / dotSize, 0);
+        int firstRow = Math.max(clip.y / dotSize, 0);
+        int lastColumn = Math.min((clip.x + clip.width - 1) / dotSize, gameModel.getWidth() - 1);
+        int lastRow = Math.min((clip.y + clip.height - 1) / dotSize, gameModel.getHeigth() - 1);
+        for (int j = firstRow; j <= lastRow; j++) {
+            for (int i = firstColumn; i <= lastColumn; i++) {
+                atlas.draw(g, icons[j * gameModel.getWidth() + i], i * dotSize, j * dotSize, dotSize);
+            }
+        }
+    }
+
+    public Dimension getPreferredSize() {
+        return new Dimension(gameModel.getWidth() * dotSize, gameModel.getHeigth() * dotSize);
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Math.min(size.width, 40 * dotSize), Math.min(size.height, 25 * dotSize));
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return dotSize;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        int size = orientation == SwingConstants.HORIZONTAL ? visible.width : visible.height;
+        return Math.max(dotSize, size - dotSize);
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /**
+     * Returns the index of the dot under the mouse, or -1 if the mouse
+     * is outside of the board
+     */
+    private int cellAt(MouseEvent e) {
+        int i = e.getX() / dotSize;
+        int j = e.getY() / dotSize;
+        if (e.getX() < 0 || e.getY() < 0 || i >= gameModel.getWidth() || j >= gameModel.getHeigth()) {
+            return -1;
+        }
+        return j * gameModel.getWidth() + i;
+    }
+}
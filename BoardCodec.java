@@ -0,0 +1,139 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * The class <b>BoardCodec</b> encodes a board in a compact binary form:
+ * a 24 bytes header (magic number, width, heigth, number of mines and
+ * seed) followed by the mined bitplane, one bit per dot, 64 dots per
+ * long. Everything is little endian.
+ *
+ * Only the mines are stored: the numbers of neighbooring mines are
+ * computed again when the board is decoded.
+ */
+public class BoardCodec {
+
+    static final int MAGIC = 0x5753_4E4D; // "MNSW"
+    static final int HEADER_SIZE = 24;
+
+    /**
+     * Returns the size of an encoded board
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @return the size of the encoded board, in bytes
+     */
+    public static int encodedSize(int width, int heigth) {
+        return HEADER_SIZE + 8 * words(width, heigth);
+    }
+
+    /**
+     * Encodes the board of a model
+     *
+     * @param model
+     *            the model of the board
+     * @return the encoded board
+     */
+    public static byte[] encode(GameModel model) {
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(model.getWidth(), model.getHeigth()));
+        encode(model, out);
+        return out.array();
+    }
+
+    /**
+     * Encodes the board of a model at the current position of a buffer,
+     * and moves the position after the encoded board
+     *
+     * @param model
+     *            the model of the board
+     * @param out
+     *            the buffer receiving the encoded board
+     */
+    public static void encode(GameModel model, ByteBuffer out) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(model.getWidth());
+        out.putInt(model.getHeigth());
+        out.putInt(model.getNumberOfMines());
+        out.putLong(model.getSeed());
+        writeMines(model, out);
+        out.order(order);
+    }
+
+    /**
+     * Decodes a board
+     *
+     * @param encoded
+     *            the encoded board
+     * @return a new model holding the board
+     */
+    public static GameModel decode(byte[] encoded) {
+        return decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Decodes the board at the current position of a buffer, and moves
+     * the position after the encoded board
+     *
+     * @param in
+     *            the buffer holding the encoded board
+     * @return a new model holding the board
+     */
+    public static GameModel decode(ByteBuffer in) {
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an encoded board");
+            }
+            int width = in.getInt();
+            int heigth = in.getInt();
+            int numberOfMines = in.getInt();
+            long seed = in.getLong();
+            GameModel model = new GameModel(width, heigth, 0, seed);
+            model.load(seed, readMines(in, width, heigth));
+            if (model.getNumberOfMines() != numberOfMines) {
+                throw new IllegalArgumentException("Header says " + numberOfMines
+                        + " mines, bitplane has " + model.getNumberOfMines());
+            }
+            return model;
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Writes the mined bitplane of a model at the current position of a
+     * little endian buffer, and moves the position after it
+     */
+    static void writeMines(GameModel model, ByteBuffer out) {
+        int words = words(model.getWidth(), model.getHeigth());
+        LongBuffer mines = out.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        mines.limit(words);
+        model.getMines(mines);
+        out.position(out.position() + 8 * words);
+    }
+
+    /**
+     * Returns a view on the mined bitplane at the current position of
+     * a little endian buffer, and moves the position after it. No data
+     * is copied.
+     */
+    static LongBuffer readMines(ByteBuffer in, int width, int heigth) {
+        int words = words(width, heigth);
+        LongBuffer mines = in.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        mines.limit(words);
+        in.position(in.position() + 8 * words);
+        return mines;
+    }
+
+    /**
+     * Returns the number of longs of the bitplane of a board
+     */
+    static int words(int width, int heigth) {
+        return (width * heigth + 63) / 64;
+    }
+}
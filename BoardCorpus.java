@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class <b>BoardCorpus</b> gives access to a file holding many
+ * boards of the same size. The file is memory mapped: a board is found
+ * by its number in constant time, its mines are read in place without
+ * being copied, and a sequential scan runs at the speed of the disk
+ * (or of the page cache).
+ *
+ * The file starts with a 32 bytes header (magic number, version, width,
+ * heigth, record size and number of boards), followed by one fixed size
+ * record per board: number of mines, 4 unused bytes, seed, and the mined
+ * bitplane as in <b>BoardCodec</b>. Everything is little endian.
+ * Files are written with <b>BoardCorpus.Writer</b>.
+ */
+public class BoardCorpus implements AutoCloseable {
+
+    static final int MAGIC = 0x4353_4E4D; // "MNSC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final long REGION_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final int width;
+    private final int heigth;
+    private final int recordSize;
+    private final long numberOfBoards;
+    private final long boardsPerRegion;
+
+    /**
+     * Opens a corpus file and maps it in memory, read only
+     *
+     * @param file
+     *            the corpus file
+     * @throws IOException
+     *            if the file cannot be read or is not a corpus
+     */
+    public BoardCorpus(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a board corpus");
+        }
+        width = header.getInt();
+        heigth = header.getInt();
+        recordSize = header.getInt();
+        header.getInt();
+        numberOfBoards = header.getLong();
+
+        // a record never spans two regions
+        boardsPerRegion = Math.max(1, REGION_SIZE / recordSize);
+        int count = (int) ((numberOfBoards + boardsPerRegion - 1) / boardsPerRegion);
+        regions = new MappedByteBuffer[count];
+        for (int r = 0; r < count; r++) {
+            long first = r * boardsPerRegion;
+            long boards = Math.min(boardsPerRegion, numberOfBoards - first);
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + first * recordSize, boards * recordSize);
+            regions[r].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the number of boards in the corpus
+     *
+     * @return the number of boards
+     */
+    public long size() {
+        return numberOfBoards;
+    }
+
+    /**
+     * Getter method for the width of the boards
+     *
+     * @return the width of the boards
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter method for the heigth of the boards
+     *
+     * @return the heigth of the boards
+     */
+    public int getHeigth() {
+        return heigth;
+    }
+
+    /**
+     * Returns the number of mines of board number k
+     *
+     * @param k
+     *            the number of the board
+     * @return the number of mines of the board
+     */
+    public int getNumberOfMines(long k) {
+        return region(k).getInt(offset(k));
+    }
+
+    /**
+     * Returns the seed board number k was generated from
+     *
+     * @param k
+     *            the number of the board
+     * @return the seed of the board
+     */
+    public long getSeed(long k) {
+        return region(k).getLong(offset(k) + 8);
+    }
+
+    /**
+     * Tests if the dot at location (i,j) of board number k is mined,
+     * reading the file in place
+     *
+     * @param k
+     *            the number of the board
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return true if the dot is mined
+     */
+    public boolean isMined(long k, int i, int j) {
+        int cell = j * width + i;
+        long word = region(k).getLong(offset(k) + RECORD_HEADER_SIZE + 8 * (cell >>> 6));
+        return (word & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns a view on the mined bitplane of board number k. No data
+     * is copied: the view reads the mapped file.
+     *
+     * @param k
+     *            the number of the board
+     * @return the mined bitplane of the board
+     */
+    public LongBuffer getMines(long k) {
+        ByteBuffer record = region(k).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position(offset(k) + RECORD_HEADER_SIZE);
+        return BoardCodec.readMines(record, width, heigth);
+    }
+
+    /**
+     * Loads board number k in a model of the same size, reusing its
+     * storage
+     *
+     * @param k
+     *            the number of the board
+     * @param model
+     *            the model receiving the board
+     */
+    public void load(long k, GameModel model) {
+        if (model.getWidth() != width || model.getHeigth() != heigth) {
+            throw new IllegalArgumentException("The corpus holds " + width + "x" + heigth + " boards");
+        }
+        model.load(getSeed(k), getMines(k));
+    }
+
+    /**
+     * Loads board number k in a new model
+     *
+     * @param k
+     *            the number of the board
+     * @return a model holding the board
+     */
+    public GameModel load(long k) {
+        GameModel model = new GameModel(width, heigth, 0, 0);
+        load(k, model);
+        return model;
+    }
+
+    /**
+     * Closes the file. The views returned by getMines must not be
+     * used afterwards.
+     *
+     * @throws IOException
+     *            if the file cannot be closed
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer region(long k) {
+        if (k < 0 || k >= numberOfBoards) {
+            throw new IndexOutOfBoundsException("board " + k + ", size " + numberOfBoards);
+        }
+        return regions[(int) (k / boardsPerRegion)];
+    }
+
+    private int offset(long k) {
+        return (int) (k % boardsPerRegion) * recordSize;
+    }
+
+    /**
+     * The class <b>Writer</b> creates a corpus file and appends boards to
+     * it. The number of boards is written in the header when the writer
+     * is closed.
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int width;
+        private final int heigth;
+        private final int recordSize;
+        private long numberOfBoards;
+
+        /**
+         * Constructor, creates (or truncates) a corpus file
+         *
+         * @param file
+         *            the corpus file
+         * @param width
+         *            the width of the boards
+         * @param heigth
+         *            the heigth of the boards
+         * @throws IOException
+         *            if the file cannot be created
+         */
+        public Writer(Path file, int width, int heigth) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.width = width;
+            this.heigth = heigth;
+            this.recordSize = RECORD_HEADER_SIZE + 8 * BoardCodec.words(width, heigth);
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 20, recordSize)).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Appends the board of a model
+         *
+         * @param model
+         *            the model of the board, of the size of the corpus
+         * @throws IOException
+         *            if the file cannot be written
+         */
+        public void append(GameModel model) throws IOException {
+            if (model.getWidth() != width || model.getHeigth() != heigth) {
+                throw new IllegalArgumentException("The corpus holds " + width + "x" + heigth + " boards");
+            }
+            if (buffer.remaining() < recordSize) {
+                flush();
+            }
+            buffer.putInt(model.getNumberOfMines());
+            buffer.putInt(0);
+            buffer.putLong(model.getSeed());
+            BoardCodec.writeMines(model, buffer);
+            numberOfBoards++;
+        }
+
+        /**
+         * Writes the remaining boards and the header, then closes the file
+         *
+         * @throws IOException
+         *            if the file cannot be written
+         */
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(heigth)
+                        .putInt(recordSize).putInt(0).putLong(numberOfBoards);
+                header.flip();
+                channel.write(header, 0);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+   /**
+     * <b>main</b> of the corpus tool. Writes a corpus of random boards,
+     * then scans it sequentially, and prints the throughput of both.
+     * The parameters are, in order and all optional: the file, the
+     * number of boards, the width, the heigth and the number of mines.
+     *
+     * @param args
+     *            command line parameters
+     * @throws IOException
+     *            if the file cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "boards.corpus");
+        int boards = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int width = args.length > 4 ? Integer.parseInt(args[2]) : 30;
+        int heigth = args.length > 4 ? Integer.parseInt(args[3]) : 16;
+        int mines = args.length > 4 ? Integer.parseInt(args[4]) : 99;
+
+        long start = System.nanoTime();
+        GameModel model = new GameModel(width, heigth, mines, 42);
+        try (Writer writer = new Writer(file, width, heigth)) {
+            for (int k = 0; k < boards; k++) {
+                writer.append(model);
+                model.reset();
+            }
+        }
+        report("written", boards, file, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long total = 0;
+        try (BoardCorpus corpus = new BoardCorpus(file)) {
+            for (long k = 0; k < corpus.size(); k++) {
+                LongBuffer bits = corpus.getMines(k);
+                for (int w = 0; w < bits.limit(); w++) {
+                    total += Long.bitCount(bits.get(w));
+                }
+            }
+        }
+        report("scanned", boards, file, System.nanoTime() - start);
+        System.out.println("average mines per board: " + (double) total / boards);
+    }
+
+    private static void report(String what, long boards, Path file, long nanos) throws IOException {
+        double seconds = nanos / 1e9;
+        double megabytes = java.nio.file.Files.size(file) / 1e6;
+        System.out.printf("%s %d boards (%.1f MB) in %.3f s: %.0f boards/s, %.1f MB/s%n",
+                what, boards, megabytes, seconds, boards / seconds, megabytes / seconds);
+    }
+}
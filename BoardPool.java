@@ -0,0 +1,329 @@
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>BoardPool</b> keeps boards ready to be played, so that a
+ * new game starts at once instead of waiting for its mines to be placed
+ * (or for a board without guess to be found).
+ *
+ * The boards are kept in a bounded queue per kind of board (width,
+ * heigth, number of mines and mode). Each time a board is taken, a
+ * background thread tops up its queue. A board taken from an empty queue
+ * is built by the calling thread (a miss).
+ *
+ * A board taken from the pool is given to a game with
+ * <b>GameModel.swap</b>, which costs the same whatever the size of the
+ * board.
+ */
+public class BoardPool implements AutoCloseable {
+
+    /**
+     * The kinds of boards: mines placed at random, or a board that can
+     * be solved without guessing from a click in its middle
+     */
+    public enum Mode {RANDOM, NO_GUESS}
+
+    private final int capacity;
+    private final ConcurrentHashMap<Key, BlockingQueue<GameModel>> ready;
+    private final Set<Key> pending;
+    private final BlockingQueue<Key> refills;
+    private final Thread producer;
+    private final SplittableRandom seeds;
+    private NoGuessGenerator generator;
+    private volatile boolean closed;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong boardsBuilt;
+    private final AtomicLong refillTime;
+    private final AtomicLong maxRefillTime;
+
+    /**
+     * Constructor, creates a pool keeping at most capacity boards of
+     * each kind, and starts its background thread
+     *
+     * @param capacity
+     *            the number of boards kept ready for each kind of board
+     */
+    public BoardPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.ready = new ConcurrentHashMap<Key, BlockingQueue<GameModel>>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.refills = new LinkedBlockingQueue<Key>();
+        this.seeds = new SplittableRandom(System.nanoTime());
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.boardsBuilt = new AtomicLong();
+        this.refillTime = new AtomicLong();
+        this.maxRefillTime = new AtomicLong();
+        this.producer = new Thread(this::produce, "BoardPool producer");
+        producer.setDaemon(true);
+        producer.setPriority(Thread.MIN_PRIORITY);
+        producer.start();
+    }
+
+    /**
+     * Asks for boards of a kind to be built in the background, before
+     * the first one is taken
+     *
+     * @param width
+     *            the width of the boards
+     * @param heigth
+     *            the heigth of the boards
+     * @param numberOfMines
+     *            the number of mines of the boards
+     * @param mode
+     *            the mode of the boards
+     */
+    public void prefill(int width, int heigth, int numberOfMines, Mode mode) {
+        check(width, heigth, numberOfMines, mode);
+        refill(new Key(width, heigth, numberOfMines, mode));
+    }
+
+    /**
+     * Takes a board ready to be played, every dot covered. The board is
+     * built at once if none is ready.
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param numberOfMines
+     *            the number of mines of the board
+     * @param mode
+     *            the mode of the board
+     * @return a model holding the board
+     */
+    public GameModel take(int width, int heigth, int numberOfMines, Mode mode) {
+        check(width, heigth, numberOfMines, mode);
+        Key key = new Key(width, heigth, numberOfMines, mode);
+        BlockingQueue<GameModel> queue = queue(key);
+        GameModel board = queue.poll();
+        if (board != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+            board = build(key);
+        }
+        refill(key);
+        return board;
+    }
+
+    /**
+     * Returns the number of boards taken from the pool ready to be played
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of boards that had to be built when taken
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of boards built by the background thread
+     *
+     * @return the number of boards built in the background
+     */
+    public long getRefills() {
+        return boardsBuilt.get();
+    }
+
+    /**
+     * Returns the mean time taken by the background thread to build a
+     * board
+     *
+     * @return the mean refill latency, in nanoseconds
+     */
+    public long getMeanRefillLatency() {
+        long built = boardsBuilt.get();
+        return built == 0 ? 0 : refillTime.get() / built;
+    }
+
+    /**
+     * Returns the longest time taken by the background thread to build a
+     * board
+     *
+     * @return the maximum refill latency, in nanoseconds
+     */
+    public long getMaxRefillLatency() {
+        return maxRefillTime.get();
+    }
+
+    /**
+     * Stops the background thread. The boards ready are dropped.
+     */
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        synchronized (this) {
+            if (generator != null) {
+                generator.close();
+            }
+        }
+        ready.clear();
+    }
+
+    private BlockingQueue<GameModel> queue(Key key) {
+        return ready.computeIfAbsent(key, k -> new ArrayBlockingQueue<GameModel>(capacity));
+    }
+
+    private void refill(Key key) {
+        if (!closed && pending.add(key)) {
+            refills.add(key);
+        }
+    }
+
+    /**
+     * The loop of the background thread: tops up the queues one after
+     * the other, as they are asked for
+     */
+    private void produce() {
+        while (!closed) {
+            Key key;
+            try {
+                key = refills.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.remove(key);
+            BlockingQueue<GameModel> queue = queue(key);
+            try {
+                while (!closed && queue.remainingCapacity() > 0) {
+                    long start = System.nanoTime();
+                    GameModel board = build(key);
+                    long time = System.nanoTime() - start;
+                    boardsBuilt.incrementAndGet();
+                    refillTime.addAndGet(time);
+                    maxRefillTime.accumulateAndGet(time, Math::max);
+                    queue.offer(board);
+                }
+            } catch (RuntimeException e) {
+                // closed while building, or an invalid kind of board: the
+                // same error is thrown to the thread taking one, on a miss
+            }
+        }
+    }
+
+    /**
+     * Refuses the boards without guess that cannot open their middle dot,
+     * before they reach the background thread
+     */
+    private static void check(int width, int heigth, int numberOfMines, Mode mode) {
+        if (mode == Mode.NO_GUESS
+                && numberOfMines > NoGuessGenerator.getMaxMines(width, heigth, width / 2, heigth / 2)) {
+            throw new IllegalArgumentException("Too many mines for a board without guess: " + numberOfMines
+                    + " mines in " + width + "x" + heigth + " dots leave no room to open the middle dot");
+        }
+    }
+
+    private GameModel build(Key key) {
+        long seed;
+        synchronized (seeds) {
+            seed = seeds.nextLong();
+        }
+        if (key.mode == Mode.NO_GUESS) {
+            return generator().generate(key.width, key.heigth, key.numberOfMines,
+                    key.width / 2, key.heigth / 2, seed);
+        }
+        return new GameModel(key.width, key.heigth, key.numberOfMines, seed);
+    }
+
+    private synchronized NoGuessGenerator generator() {
+        if (generator == null) {
+            generator = new NoGuessGenerator(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return generator;
+    }
+
+    /**
+     * The class <b>Key</b> identifies a kind of board
+     */
+    static class Key {
+
+        final int width;
+        final int heigth;
+        final int numberOfMines;
+        final Mode mode;
+
+        Key(int width, int heigth, int numberOfMines, Mode mode) {
+            this.width = width;
+            this.heigth = heigth;
+            this.numberOfMines = numberOfMines;
+            this.mode = mode;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return width == key.width && heigth == key.heigth
+                    && numberOfMines == key.numberOfMines && mode == key.mode;
+        }
+
+        public int hashCode() {
+            return Objects.hash(width, heigth, numberOfMines, mode);
+        }
+    }
+
+   /**
+     * <b>main</b> of the pool. Starts games one after the other, as fast
+     * as a player pressing reset, and prints the hit rate and the time
+     * taken by each new game, with and without the pool.
+     * The parameters are, in order and all optional: the number of
+     * games, the width, the heigth, the number of mines and the mode.
+     *
+     * @param args
+     *            command line parameters
+     * @throws InterruptedException
+     *            if interrupted while waiting between games
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int width = args.length > 3 ? Integer.parseInt(args[1]) : 1000;
+        int heigth = args.length > 3 ? Integer.parseInt(args[2]) : 1000;
+        int numberOfMines = args.length > 3 ? Integer.parseInt(args[3]) : 150000;
+        Mode mode = args.length > 4 ? Mode.valueOf(args[4]) : Mode.RANDOM;
+
+        GameModel game = new GameModel(width, heigth, numberOfMines, 0);
+        long start = System.nanoTime();
+        for (int k = 0; k < games; k++) {
+            game.reset();
+        }
+        System.out.printf("reset: %.3f ms per game%n", (System.nanoTime() - start) / 1e6 / games);
+
+        try (BoardPool pool = new BoardPool(4)) {
+            pool.prefill(width, heigth, numberOfMines, mode);
+            long total = 0;
+            for (int k = 0; k < games; k++) {
+                // the player looks at the board for a while
+                Thread.sleep(20);
+                start = System.nanoTime();
+                game.swap(pool.take(width, heigth, numberOfMines, mode));
+                total += System.nanoTime() - start;
+            }
+            System.out.printf("pool: %.3f ms per game, %d hits, %d misses,"
+                    + " refill latency mean %.3f ms, max %.3f ms%n",
+                    total / 1e6 / games, pool.getHits(), pool.getMisses(),
+                    pool.getMeanRefillLatency() / 1e6, pool.getMaxRefillLatency() / 1e6);
+        }
+    }
+}
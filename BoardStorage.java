@@ -0,0 +1,175 @@
+/**
+ * Storage engine behind a <b>GameModel</b>. A BoardStorage keeps the
+ * state of every dot of the board (mined, covered, clicked, flagged and the
+ * number of neighbooring mines), addressed by a single cell index.
+ * The dot at location (x,y) of a board of width w has the index
+ * y*w + x.
+ *
+ * Implementations are free to choose their representation; they do
+ * not create one object per dot. A storage must be closed once it is
+ * no longer used.
+ */
+
+public interface BoardStorage extends AutoCloseable {
+
+    /**
+     * Returns the width of the board
+     *
+     * @return the width of the board
+     */
+
+    public abstract int getWidth();
+
+    /**
+     * Returns the heigth of the board
+     *
+     * @return the heigth of the board
+     */
+
+    public abstract int getHeigth();
+
+    /**
+     * Tests if the dot at index cell is mined.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot is mined
+     */
+
+    public abstract boolean isMined( int cell );
+
+    /**
+     * Hides a mine under the dot at index cell.
+     *
+     * @param cell the index of the dot
+     */
+
+    public abstract void setMined( int cell );
+
+    /**
+     * Removes the mine hidden under the dot at index cell.
+     *
+     * @param cell the index of the dot
+     */
+
+    public abstract void clearMined( int cell );
+
+    /**
+     * Finds the first mined dot at or after index from.
+     *
+     * @param from the index to start from
+     * @return the index of the next mined dot, or -1 if there is none
+     */
+
+    public abstract int nextMined( int from );
+
+    /**
+     * Tests if the dot at index cell is still covered.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot is covered
+     */
+
+    public abstract boolean isCovered( int cell );
+
+    /**
+     * Uncovers the dot at index cell.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot was covered before the call
+     */
+
+    public abstract boolean uncover( int cell );
+
+    /**
+     * Uncovers every dot of the board in one bulk operation.
+     */
+
+    public abstract void uncoverAll();
+
+    /**
+     * Covers the dot at index cell again, and forgets that it was
+     * clicked. Used to undo moves.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot was uncovered before the call
+     */
+
+    public abstract boolean cover( int cell );
+
+    /**
+     * Tests if the dot at index cell has been clicked.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot has been clicked
+     */
+
+    public abstract boolean hasBeenClicked( int cell );
+
+    /**
+     * Marks the dot at index cell as clicked.
+     *
+     * @param cell the index of the dot
+     */
+
+    public abstract void click( int cell );
+
+    /**
+     * Tests if the dot at index cell is flagged.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot is flagged
+     */
+
+    public abstract boolean isFlagged( int cell );
+
+    /**
+     * Puts a flag on the dot at index cell, or removes it if the dot
+     * was already flagged.
+     *
+     * @param cell the index of the dot
+     * @return true if the dot is now flagged
+     */
+
+    public abstract boolean toggleFlag( int cell );
+
+    /**
+     * Returns the number of neighbooring mines stored for the dot at index cell.
+     *
+     * @param cell the index of the dot
+     * @return the stored number of neighbooring mines
+     */
+
+    public abstract int getNeighbooringMines( int cell );
+
+    /**
+     * Stores the number of neighbooring mines of the dot at index cell.
+     *
+     * @param cell the index of the dot
+     * @param neighbooringMines the number of neighbooring mines (0 to 8)
+     */
+
+    public abstract void setNeighbooringMines( int cell, int neighbooringMines );
+
+    /**
+     * Puts every dot back in its initial state (covered, not mined,
+     * not clicked, no neighbooring mine) without reallocating.
+     */
+
+    public abstract void clear();
+
+    /**
+     * Returns the number of bytes used to hold the state of the board.
+     *
+     * @return the size of the board data, in bytes
+     */
+
+    public abstract long getMemoryUsed();
+
+    /**
+     * Releases the memory held by the board, if it is not managed by
+     * the garbage collector. The storage cannot be used afterwards.
+     */
+
+    public abstract void close();
+
+}
@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * The class <b>CellList</b> is a growable list of dot indices, stored
+ * in a plain <b>int</b> array. It is meant to be cleared and reused:
+ * once it has grown to the size it needs, adding dots to it does not
+ * allocate anything.
+ */
+
+public class CellList {
+
+    private int[] cells;
+    private int size;
+
+    /**
+     * Constructor, creates an empty list
+     *
+     * @param capacity
+     *            the initial capacity of the list
+     */
+    public CellList(int capacity) {
+        cells = new int[Math.max(capacity, 16)];
+        size = 0;
+    }
+
+    /**
+     * Adds a dot index at the end of the list
+     *
+     * @param cell
+     *            the index of the dot
+     */
+    public void add(int cell) {
+        if (size == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+        cells[size++] = cell;
+    }
+
+    /**
+     * Returns the dot index at position k in the list
+     *
+     * @param k
+     *            the position in the list
+     * @return the index of the dot
+     */
+    public int get(int k) {
+        if (k >= size) {
+            throw new IndexOutOfBoundsException("position " + k + ", size " + size);
+        }
+        return cells[k];
+    }
+
+    /**
+     * Replaces the dot index at position k in the list
+     *
+     * @param k
+     *            the position in the list
+     * @param cell
+     *            the new index of the dot
+     */
+    public void set(int k, int cell) {
+        if (k >= size) {
+            throw new IndexOutOfBoundsException("position " + k + ", size " + size);
+        }
+        cells[k] = cell;
+    }
+
+    /**
+     * Removes the dot indices from position size to the end of the list
+     *
+     * @param size
+     *            the new size of the list, at most the current one
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("size " + size + ", current size " + this.size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of dot indices in the list
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tests if the list is empty
+     *
+     * @return true if the list is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes the last dot index of the list, so that the list can be
+     * used as a stack
+     *
+     * @return the index of the dot removed
+     */
+    public int removeLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("The list is empty");
+        }
+        return cells[--size];
+    }
+
+    /**
+     * Empties the list, keeping its storage for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the content of the list in a new array
+     *
+     * @return the dot indices of the list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cells, size);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * The class <b>ChangeSet</b> is an immutable copy of the changes made
+ * to the board by one or more moves: the dots changed and their new
+ * icons, or a marker telling that the whole board changed. It is built
+ * by the thread playing the game and read by the event dispatch thread,
+ * which never reads the model while the game is played.
+ *
+ * The icons of a whole board are not copied into each set: they are
+ * written in a <b>Snapshot</b> shared by all the sets of a view, and
+ * read from there. A set changing the whole board is only useful until
+ * the next one, since the sets sent before the last whole-board set
+ * are skipped anyway.
+ */
+public class ChangeSet {
+
+    private final int[] cells;
+    private final byte[] icons;
+    private final Snapshot snapshot;
+    private final long version;
+    private final int numberOfSteps;
+
+    private ChangeSet(int[] cells, byte[] icons, Snapshot snapshot, long version, int numberOfSteps) {
+        this.cells = cells;
+        this.icons = icons;
+        this.snapshot = snapshot;
+        this.version = version;
+        this.numberOfSteps = numberOfSteps;
+    }
+
+    /**
+     * Copies the changes reported by a model since its changes were last
+     * cleared, with the icons the dots have now. If the whole board
+     * changed, its icons are written in the snapshot instead.
+     *
+     * @param gameModel
+     *            the model of the game
+     * @param snapshot
+     *            the snapshot of the whole board, of the size of the model
+     * @return the changes of the model
+     */
+    public static ChangeSet of(GameModel gameModel, Snapshot snapshot) {
+        int width = gameModel.getWidth();
+        if (gameModel.hasChangedAll()) {
+            return new ChangeSet(null, null, snapshot, snapshot.write(gameModel), gameModel.getNumberOfSteps());
+        }
+        CellList changed = gameModel.getChangedCells();
+        int[] cells = new int[changed.size()];
+        byte[] icons = new byte[changed.size()];
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = changed.get(k);
+            icons[k] = (byte) GameView.getIcon(gameModel, cells[k] % width, cells[k] / width);
+        }
+        return new ChangeSet(cells, icons, null, 0, gameModel.getNumberOfSteps());
+    }
+
+    /**
+     * Returns true if the whole board changed: the icons of the dots are
+     * then read with getIcons
+     *
+     * @return true if every dot may have changed
+     */
+    public boolean isAll() {
+        return cells == null;
+    }
+
+    /**
+     * Copies the icons of every dot, dot k at index k, for a set which
+     * changed the whole board
+     *
+     * @param icons
+     *            receives the icons, of the size of the board
+     * @return false if the whole board changed again since this set was
+     *            made: icons is then left as it was, and a newer set
+     *            follows
+     */
+    public boolean getIcons(byte[] icons) {
+        return snapshot.read(version, icons);
+    }
+
+    /**
+     * Returns the number of dots in the set, for a set which did not
+     * change the whole board
+     *
+     * @return the number of dots changed
+     */
+    public int size() {
+        return cells.length;
+    }
+
+    /**
+     * Returns the k-th dot changed
+     *
+     * @param k
+     *            the position of the dot in the set
+     * @return the index (y*width + x) of the dot
+     */
+    public int getCell(int k) {
+        return cells[k];
+    }
+
+    /**
+     * Returns the new icon of the k-th dot changed
+     *
+     * @param k
+     *            the position of the dot in the set
+     * @return the icon of the dot
+     */
+    public int getIcon(int k) {
+        return icons[k];
+    }
+
+    /**
+     * Returns the number of steps played once the changes were made
+     *
+     * @return the number of steps
+     */
+    public int getNumberOfSteps() {
+        return numberOfSteps;
+    }
+
+    /**
+     * The class <b>Snapshot</b> holds the icons of a whole board, as of
+     * the last set which changed it, overwritten by the next one. Each
+     * write gets a new version, so that a reader can tell whether the
+     * icons are still those of its set.
+     */
+    public static class Snapshot {
+
+        private final byte[] icons;
+        private long version;
+
+        /**
+         * Constructor, creates the snapshot of a board
+         *
+         * @param width
+         *            the width of the board
+         * @param heigth
+         *            the heigth of the board
+         */
+        public Snapshot(int width, int heigth) {
+            this.icons = new byte[width * heigth];
+        }
+
+        /**
+         * Writes the icons of every dot of a model
+         *
+         * @return the version of the icons written
+         */
+        synchronized long write(GameModel gameModel) {
+            int width = gameModel.getWidth();
+            for (int j = 0; j < gameModel.getHeigth(); j++) {
+                for (int i = 0; i < width; i++) {
+                    icons[j * width + i] = (byte) GameView.getIcon(gameModel, i, j);
+                }
+            }
+            return ++version;
+        }
+
+        /**
+         * Copies the icons, if they are still of a given version
+         *
+         * @return true if the icons were copied
+         */
+        synchronized boolean read(long version, byte[] target) {
+            if (version != this.version) {
+                return false;
+            }
+            System.arraycopy(icons, 0, target, 0, icons.length);
+            return true;
+        }
+    }
+}
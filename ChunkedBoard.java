@@ -0,0 +1,437 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * The class <b>ChunkedBoard</b> is a board without borders: the plane
+ * is split in tiles of 64x64 dots, and a tile only exists in memory
+ * once the game needs it. Whether a dot is mined only depends on the
+ * seed of the board, on the coordinates of its tile and on its place in
+ * the tile, so a tile can be generated (or generated again) at any time,
+ * and the numbers of neighbooring mines are right across tile borders.
+ *
+ * Tiles in which nothing was uncovered or flagged hold no state of their
+ * own: beyond <b>maxTiles</b>, they are evicted and generated again on
+ * demand. Memory thus grows with the explored area, not with the size
+ * of the plane.
+ *
+ * The zone uncovered by a single click may be infinite on sparse
+ * boards: <b>reveal</b> stops after <b>maxReveal</b> dots and keeps the
+ * rest of the zone pending, to be continued with <b>continueCascade</b>
+ * or by the next clicks, which never drop it.
+ */
+public class ChunkedBoard {
+
+    static final int TILE_SHIFT = 6;
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+    static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final long seed;
+    private final double density;
+    private final long threshold;
+    private final int maxTiles;
+    private final int maxReveal;
+    private final HashMap<Long, Tile> tiles;
+    private final byte[] halo;
+    private long[] queue;
+    private int queueHead;
+    private int queueTail;
+    private long numberUncovered;
+    private boolean lost;
+    private long lastKey;
+    private Tile lastTile;
+
+    /**
+     * Constructor, creates an infinite board
+     *
+     * @param seed
+     *            the seed of the board
+     * @param density
+     *            the probability for a dot to be mined, between 0 and 1
+     * @param maxTiles
+     *            the number of tiles kept in memory before untouched
+     *            tiles are evicted
+     * @param maxReveal
+     *            the maximum number of dots uncovered by one call to
+     *            reveal or continueCascade
+     */
+    public ChunkedBoard(long seed, double density, int maxTiles, int maxReveal) {
+        if (density < 0 || density >= 1) {
+            throw new IllegalArgumentException("Invalid density " + density);
+        }
+        this.seed = seed;
+        this.density = density;
+        this.threshold = (long) (density * 0x1p63);
+        this.maxTiles = maxTiles;
+        this.maxReveal = maxReveal;
+        this.tiles = new HashMap<Long, Tile>();
+        this.halo = new byte[(TILE_SIZE + 2) * (TILE_SIZE + 2)];
+        this.queue = new long[1024];
+    }
+
+    /**
+     * returns true if the dot at location (x,y) is mined, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isMined(int x, int y) {
+        return generateMined(x >> TILE_SHIFT, y >> TILE_SHIFT, (y & TILE_MASK) * TILE_SIZE + (x & TILE_MASK));
+    }
+
+    /**
+     * returns true if the dot is covered, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isCovered(int x, int y) {
+        Tile tile = tiles.get(key(x >> TILE_SHIFT, y >> TILE_SHIFT));
+        return tile == null || !tile.isUncovered(x & TILE_MASK, y & TILE_MASK);
+    }
+
+    /**
+     * returns true if the dot is flagged, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isFlagged(int x, int y) {
+        Tile tile = tiles.get(key(x >> TILE_SHIFT, y >> TILE_SHIFT));
+        return tile != null && (tile.flagged[y & TILE_MASK] & (1L << (x & TILE_MASK))) != 0;
+    }
+
+    /**
+     * returns the number of neighbooring mines of the dot at location
+     * (x,y). The tile of the dot is generated if needed.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the number of neighbooring mines at location (x,y)
+     */
+    public int getNeighbooringMines(int x, int y) {
+        return tile(x >> TILE_SHIFT, y >> TILE_SHIFT).counts[(y & TILE_MASK) * TILE_SIZE + (x & TILE_MASK)];
+    }
+
+    /**
+     * Puts a flag on the covered dot at location (x,y), or removes it
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return true if the dot is now flagged
+     */
+    public boolean flag(int x, int y) {
+        Tile tile = tile(x >> TILE_SHIFT, y >> TILE_SHIFT);
+        if (tile.isUncovered(x & TILE_MASK, y & TILE_MASK)) {
+            return false;
+        }
+        tile.touched = true;
+        tile.flagged[y & TILE_MASK] ^= 1L << (x & TILE_MASK);
+        return (tile.flagged[y & TILE_MASK] & (1L << (x & TILE_MASK))) != 0;
+    }
+
+    /**
+     * Uncovers the dot at location (x,y) and, if it is blank, the zone
+     * around it, up to maxReveal dots. A cascade still pending from a
+     * previous click is kept: the new zone is added to it, and both go
+     * on within the same maxReveal dots, the older one first, then with
+     * <b>continueCascade</b>.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the number of dots uncovered, or -1 if the dot is mined
+     */
+    public int reveal(int x, int y) {
+        if (!isCovered(x, y) || isFlagged(x, y)) {
+            return 0;
+        }
+        if (isMined(x, y)) {
+            uncover(x, y);
+            lost = true;
+            return -1;
+        }
+        uncover(x, y);
+        int revealed = 1;
+        if (getNeighbooringMines(x, y) == 0) {
+            push(x, y);
+        }
+        if (hasPendingCascade()) {
+            revealed += continueCascade();
+        }
+        evict();
+        return revealed;
+    }
+
+    /**
+     * Goes on uncovering the zones of the last clicks, up to maxReveal
+     * more dots.
+     *
+     * @return the number of dots uncovered
+     */
+    public int continueCascade() {
+        int revealed = 0;
+        while (queueHead < queueTail && revealed < maxReveal) {
+            long packed = queue[queueHead++];
+            int x = (int) (packed >> 32);
+            int y = (int) packed;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    Tile tile = tile(nx >> TILE_SHIFT, ny >> TILE_SHIFT);
+                    int lx = nx & TILE_MASK;
+                    int ly = ny & TILE_MASK;
+                    if (!tile.isUncovered(lx, ly) && (tile.flagged[ly] & (1L << lx)) == 0) {
+                        tile.uncovered[ly] |= 1L << lx;
+                        tile.touched = true;
+                        numberUncovered++;
+                        revealed++;
+                        if (tile.counts[ly * TILE_SIZE + lx] == 0) {
+                            push(nx, ny);
+                        }
+                    }
+                }
+            }
+        }
+        if (queueHead == queueTail) {
+            queueHead = 0;
+            queueTail = 0;
+        }
+        return revealed;
+    }
+
+    /**
+     * returns true if the zones of the last clicks are not completely
+     * uncovered yet
+     *
+     * @return true if continueCascade has more dots to uncover
+     */
+    public boolean hasPendingCascade() {
+        return queueHead < queueTail;
+    }
+
+    /**
+     * returns true if a mined dot has been uncovered
+     *
+     * @return true if the game is lost
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * Getter method for the number of uncovered dots
+     *
+     * @return the number of uncovered dots
+     */
+    public long getNumberUncovered() {
+        return numberUncovered;
+    }
+
+    /**
+     * Returns the number of tiles held in memory
+     *
+     * @return the number of tiles in memory
+     */
+    public int getNumberOfTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns an estimate of the memory used by the tiles
+     *
+     * @return the size of the tiles in memory, in bytes
+     */
+    public long getMemoryUsed() {
+        return (long) tiles.size() * Tile.BYTES + 8L * queue.length;
+    }
+
+    /**
+     * Getter method for the mine density of the board
+     *
+     * @return the probability for a dot to be mined
+     */
+    public double getDensity() {
+        return density;
+    }
+
+    private void uncover(int x, int y) {
+        Tile tile = tile(x >> TILE_SHIFT, y >> TILE_SHIFT);
+        tile.uncovered[y & TILE_MASK] |= 1L << (x & TILE_MASK);
+        tile.touched = true;
+        numberUncovered++;
+    }
+
+    private void push(int x, int y) {
+        if (queueTail == queue.length) {
+            if (queueHead > queue.length / 2) {
+                // compact the queue rather than growing it
+                System.arraycopy(queue, queueHead, queue, 0, queueTail - queueHead);
+                queueTail -= queueHead;
+                queueHead = 0;
+            }
+            else {
+                queue = Arrays.copyOf(queue, queue.length * 2);
+            }
+        }
+        queue[queueTail++] = ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Drops untouched tiles when there are more than maxTiles tiles
+     */
+    private void evict() {
+        if (tiles.size() <= maxTiles) {
+            return;
+        }
+        Iterator<Tile> iterator = tiles.values().iterator();
+        while (iterator.hasNext() && tiles.size() > maxTiles) {
+            if (!iterator.next().touched) {
+                iterator.remove();
+            }
+        }
+        lastTile = null;
+    }
+
+    /**
+     * Returns the tile (tx,ty), generating it if it is not in memory
+     */
+    private Tile tile(int tx, int ty) {
+        long key = key(tx, ty);
+        if (lastTile != null && lastKey == key) {
+            return lastTile;
+        }
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = generate(tx, ty);
+            tiles.put(key, tile);
+        }
+        lastKey = key;
+        lastTile = tile;
+        return tile;
+    }
+
+    /**
+     * Generates the tile (tx,ty): its mines, and the numbers of
+     * neighbooring mines of its dots, using a halo of one dot around
+     * the tile taken from the neighbooring tiles
+     */
+    private Tile generate(int tx, int ty) {
+        Tile tile = new Tile();
+        int side = TILE_SIZE + 2;
+        int x0 = tx << TILE_SHIFT;
+        int y0 = ty << TILE_SHIFT;
+        for (int hy = 0; hy < side; hy++) {
+            for (int hx = 0; hx < side; hx++) {
+                int ly = hy - 1;
+                int lx = hx - 1;
+                boolean mined;
+                if (lx >= 0 && lx < TILE_SIZE && ly >= 0 && ly < TILE_SIZE) {
+                    mined = generateMined(tx, ty, ly * TILE_SIZE + lx);
+                    if (mined) {
+                        tile.mined[ly] |= 1L << lx;
+                    }
+                }
+                else {
+                    mined = isMined(x0 + lx, y0 + ly);
+                }
+                halo[hy * side + hx] = (byte) (mined ? 1 : 0);
+            }
+        }
+        for (int ly = 0; ly < TILE_SIZE; ly++) {
+            for (int lx = 0; lx < TILE_SIZE; lx++) {
+                int center = (ly + 1) * side + lx + 1;
+                int count = halo[center - side - 1] + halo[center - side] + halo[center - side + 1]
+                        + halo[center - 1] + halo[center + 1]
+                        + halo[center + side - 1] + halo[center + side] + halo[center + side + 1];
+                tile.counts[ly * TILE_SIZE + lx] = (byte) count;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Derives whether dot number local of tile (tx,ty) is mined from the
+     * seed of the board
+     */
+    private boolean generateMined(int tx, int ty, int local) {
+        long tileSeed = mix(seed ^ mix(key(tx, ty)));
+        return (mix(tileSeed + local * 0x9E3779B97F4A7C15L) >>> 1) < threshold;
+    }
+
+    private static long key(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+    /**
+     * the 64 bits finalizer of SplittableRandom
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The class <b>Tile</b> holds the state of 64x64 dots: one long per
+     * row for the mined, uncovered and flagged bitplanes, and one byte
+     * per dot for the numbers of neighbooring mines.
+     */
+    private static class Tile {
+
+        static final int BYTES = 3 * (16 + 8 * TILE_SIZE) + 16 + TILE_SIZE * TILE_SIZE + 32;
+
+        final long[] mined = new long[TILE_SIZE];
+        final long[] uncovered = new long[TILE_SIZE];
+        final long[] flagged = new long[TILE_SIZE];
+        final byte[] counts = new byte[TILE_SIZE * TILE_SIZE];
+        boolean touched;
+
+        boolean isUncovered(int lx, int ly) {
+            return (uncovered[ly] & (1L << lx)) != 0;
+        }
+    }
+
+   /**
+     * <b>main</b> of the chunked board. Clicks on the first blank dot
+     * found on the x axis of an infinite board, and prints the memory
+     * used against the number of uncovered dots.
+     * The parameters are, in order and all optional: the density and
+     * the seed.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        double density = args.length > 0 ? Double.parseDouble(args[0]) : 0.15;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        ChunkedBoard board = new ChunkedBoard(seed, density, 256, 1 << 22);
+        int x = 0;
+        while (board.isMined(x, 0) || board.getNeighbooringMines(x, 0) != 0) {
+            x++;
+        }
+        long start = System.nanoTime();
+        board.reveal(x, 0);
+        long time = System.nanoTime() - start;
+        System.out.printf("density %.2f: %d dots uncovered in %.3f ms%s, %d tiles, %d KB (%.1f bytes per uncovered dot)%n",
+                density, board.getNumberUncovered(), time / 1e6,
+                board.hasPendingCascade() ? " (cascade pending)" : "",
+                board.getNumberOfTiles(), board.getMemoryUsed() / 1024,
+                (double) board.getMemoryUsed() / board.getNumberUncovered());
+    }
+}
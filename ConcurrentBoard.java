@@ -0,0 +1,413 @@
+import java.nio.LongBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>ConcurrentBoard</b> is a board shared by several players
+ * clicking at the same time (co-op mode), each from its own thread.
+ * Nothing is locked: the moves on distant parts of the board never wait
+ * for each other.
+ *
+ * The mines and the numbers of neighbooring mines never change once the
+ * board is built, and are read without any synchronization. The state of
+ * the dots is packed in words of 32 dots, 2 bits per dot (covered,
+ * uncovered or flagged); a dot changes state with a compare-and-set on
+ * its word, so a dot is uncovered by exactly one thread, even when the
+ * zones uncovered by several clicks overlap. A thread only goes on with
+ * the cascade from the blank dots it uncovered itself, with a work queue
+ * of its own.
+ *
+ * The counters are <b>LongAdder</b>, which threads update without
+ * contention, once per move; their values are exact once the moves are
+ * over.
+ */
+public class ConcurrentBoard {
+
+    static final long COVERED = 0;
+    static final long UNCOVERED = 1;
+    static final long FLAGGED = 2;
+
+    private final int width;
+    private final int heigth;
+    private final long[] mines;
+    private final byte[] neighbooringMines;
+    private final int numberOfMines;
+    private final AtomicLongArray states;
+    private final LongAdder uncovered;
+    private final LongAdder safeUncovered;
+    private final LongAdder steps;
+    private final AtomicBoolean lost;
+    private final ThreadLocal<CellList> queues;
+
+    /**
+     * Constructor, creates a board with the mines placed from a seed, at
+     * the same places as in a <b>GameModel</b> built from the same seed
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param numberOfMines
+     *            the number of mines to hide in the board
+     * @param seed
+     *            the seed used to place the mines
+     */
+    public ConcurrentBoard(int width, int heigth, int numberOfMines, long seed) {
+        this(new GameModel(width, heigth, numberOfMines, seed));
+    }
+
+    /**
+     * Constructor, creates a board with the mines of a model, every dot
+     * covered
+     *
+     * @param model
+     *            the model giving the mines
+     */
+    public ConcurrentBoard(GameModel model) {
+        this.width = model.getWidth();
+        this.heigth = model.getHeigth();
+        this.numberOfMines = model.getNumberOfMines();
+        LongBuffer bitplane = LongBuffer.allocate(BoardCodec.words(width, heigth));
+        model.getMines(bitplane);
+        this.mines = bitplane.array();
+        this.neighbooringMines = new byte[width * heigth];
+        for (int j = 0; j < heigth; j++) {
+            for (int i = 0; i < width; i++) {
+                neighbooringMines[j * width + i] = (byte) model.getNeighbooringMines(i, j);
+            }
+        }
+        this.states = new AtomicLongArray((width * heigth + 31) / 32);
+        this.uncovered = new LongAdder();
+        this.safeUncovered = new LongAdder();
+        this.steps = new LongAdder();
+        this.lost = new AtomicBoolean();
+        this.queues = ThreadLocal.withInitial(() -> new CellList(64));
+    }
+
+    /**
+     * Uncovers the dot at location (x,y), and the zone around it if it
+     * is blank. If the dot is mined, the game is lost for every player.
+     * Flagged dots are left covered.
+     *
+     * The returned list is the work queue of the calling thread: it is
+     * only valid until the next call from the same thread.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the indices (y*width + x) of the dots uncovered by this
+     *            call, and by no other
+     */
+    public CellList reveal(int x, int y) {
+        CellList queue = queues.get();
+        queue.clear();
+        int start = index(x, y);
+        if (lost.get() || !uncover(start)) {
+            return queue;
+        }
+        steps.increment();
+        queue.add(start);
+        if (isMined(start)) {
+            lost.set(true);
+            uncovered.increment();
+            return queue;
+        }
+        for (int k = 0; k < queue.size(); k++) {
+            int cell = queue.get(k);
+            if (neighbooringMines[cell] != 0) {
+                continue;
+            }
+            int i = cell % width;
+            int j = cell / width;
+            for (int b = Math.max(j - 1, 0); b <= Math.min(j + 1, heigth - 1); b++) {
+                for (int a = Math.max(i - 1, 0); a <= Math.min(i + 1, width - 1); a++) {
+                    int neighboor = b * width + a;
+                    if (uncover(neighboor)) {
+                        queue.add(neighboor);
+                    }
+                }
+            }
+        }
+        // the neighboors of a blank dot are never mined
+        uncovered.add(queue.size());
+        safeUncovered.add(queue.size());
+        return queue;
+    }
+
+    /**
+     * Puts a flag on the covered dot at location (x,y), or removes it if
+     * the dot was already flagged
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return false if the dot is uncovered, or if the game is lost
+     */
+    public boolean flag(int x, int y) {
+        int cell = index(x, y);
+        if (lost.get()) {
+            return false;
+        }
+        int word = cell >>> 5;
+        int shift = (cell & 31) << 1;
+        while (true) {
+            long current = states.get(word);
+            long state = (current >>> shift) & 3;
+            if (state == UNCOVERED) {
+                return false;
+            }
+            long next = current ^ ((COVERED ^ FLAGGED) << shift);
+            if (states.compareAndSet(word, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * returns true if the dot at location (x,y) is mined, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isMined(int x, int y) {
+        return isMined(index(x, y));
+    }
+
+    /**
+     * returns true if the dot is covered, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isCovered(int x, int y) {
+        return state(index(x, y)) != UNCOVERED;
+    }
+
+    /**
+     * returns true if the dot at location (x,y) is flagged, false otherwise
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (x,y)
+     */
+    public boolean isFlagged(int x, int y) {
+        return state(index(x, y)) == FLAGGED;
+    }
+
+    /**
+     * returns the number of neighbooring mines of the dot at location (x,y)
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the number of neighbooring mines at location (x,y)
+     */
+    public int getNeighbooringMines(int x, int y) {
+        return neighbooringMines[index(x, y)];
+    }
+
+    /**
+     * Getter method for the width of the board
+     *
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter method for the heigth of the board
+     *
+     * @return the heigth of the board
+     */
+    public int getHeigth() {
+        return heigth;
+    }
+
+    /**
+     * Returns the number of uncovered dots
+     *
+     * @return the number of uncovered dots
+     */
+    public long getNumberUncovered() {
+        return uncovered.sum();
+    }
+
+    /**
+     * Returns the number of moves that uncovered at least one dot
+     *
+     * @return the number of steps
+     */
+    public long getNumberOfSteps() {
+        return steps.sum();
+    }
+
+    /**
+     * Returns the number of nonmined dots that are still covered
+     *
+     * @return the number of nonmined dots still covered
+     */
+    public long getRemainingSafe() {
+        return (long) width * heigth - numberOfMines - safeUncovered.sum();
+    }
+
+    /**
+     * Returns true if a mined dot has been uncovered
+     *
+     * @return true if the game is lost
+     */
+    public boolean isLost() {
+        return lost.get();
+    }
+
+    /**
+     * Returns true if the game is either won or lost
+     *
+     * @return true if no more move can be played
+     */
+    public boolean isFinished() {
+        return lost.get() || getRemainingSafe() == 0;
+    }
+
+    /**
+     * Uncovers the dot at index cell, unless it is flagged or already
+     * uncovered. The counters are left to the caller.
+     *
+     * @return true if this call uncovered the dot
+     */
+    private boolean uncover(int cell) {
+        int word = cell >>> 5;
+        int shift = (cell & 31) << 1;
+        while (true) {
+            long current = states.get(word);
+            if (((current >>> shift) & 3) != COVERED) {
+                return false;
+            }
+            if (states.compareAndSet(word, current, current | (UNCOVERED << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private long state(int cell) {
+        return (states.get(cell >>> 5) >>> ((cell & 31) << 1)) & 3;
+    }
+
+    private boolean isMined(int cell) {
+        return (mines[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= heigth) {
+            throw new IllegalArgumentException("No dot at (" + x + "," + y + ")");
+        }
+        return y * width + x;
+    }
+
+   /**
+     * <b>main</b> of the board: a stress test. Threads click at random,
+     * all over the same board, on dots which are not mined, so that the
+     * zones they uncover overlap. The test checks that every dot was
+     * uncovered by exactly one thread, and that the board ends up as a
+     * <b>GameModel</b> would, after the same clicks played one after the
+     * other. Prints the clicks per second for each number of threads.
+     * The parameters are, in order and all optional: the largest number
+     * of threads, the side of the board and the density of mines.
+     *
+     * @param args
+     *            command line parameters
+     * @throws InterruptedException
+     *            if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int side = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+        double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.18;
+        int numberOfMines = (int) (density * side * side);
+        int clicks = side * side / 8;
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            GameModel model = new GameModel(side, side, numberOfMines, threads);
+            ConcurrentBoard board = new ConcurrentBoard(model);
+            int[][] clicked = new int[threads][];
+            long[] revealed = new long[threads];
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int worker = t;
+                SplittableRandom random = new SplittableRandom(t);
+                clicked[t] = new int[clicks / threads];
+                for (int k = 0; k < clicked[t].length; k++) {
+                    int cell;
+                    do {
+                        cell = random.nextInt(side * side);
+                    } while (board.isMined(cell));
+                    clicked[t][k] = cell;
+                }
+                workers[t] = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long count = 0;
+                    for (int cell : clicked[worker]) {
+                        count += board.reveal(cell % side, cell / side).size();
+                    }
+                    revealed[worker] = count;
+                });
+                workers[t].start();
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long time = System.nanoTime() - start;
+
+            // the same clicks, one after the other
+            GameEngine engine = new GameEngine();
+            engine.newGame(model);
+            for (int[] cells : clicked) {
+                for (int cell : cells) {
+                    engine.reveal(cell % side, cell / side);
+                }
+            }
+            long total = 0;
+            for (long count : revealed) {
+                total += count;
+            }
+            int different = 0;
+            for (int j = 0; j < side; j++) {
+                for (int i = 0; i < side; i++) {
+                    if (board.isCovered(i, j) != model.isCovered(i, j)) {
+                        different++;
+                    }
+                }
+            }
+            boolean ok = total == board.getNumberUncovered() && total == model.getNumberUncovered()
+                    && different == 0 && !board.isLost();
+            System.out.printf("%2d threads: %.0f clicks/s, %d dots uncovered, %d by the threads, %d by the"
+                    + " model, %d different dots: %s%n", threads, clicks / (time / 1e9),
+                    board.getNumberUncovered(), total, model.getNumberUncovered(), different,
+                    ok ? "ok" : "FAILED");
+        }
+    }
+}
@@ -0,0 +1,489 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>ConstraintSolver</b> is a <b>Strategy</b> that plays by
+ * logic. Each uncovered dot with a number is a constraint: among its
+ * covered neighboors, exactly that number (minus the mines already
+ * found) are mined. The solver applies two rules:
+ * - single dot: if the constraint has no mine left, all its covered
+ * neighboors are safe; if it has as many mines left as covered
+ * neighboors, they are all mined
+ * - pairs: if the covered neighboors of a constraint are a subset of
+ * those of another one, the difference holds the difference of their
+ * mines, which can make it all safe or all mined
+ *
+ * The frontier is kept up to date from the dots changed by each move:
+ * only the constraints around them are examined again, the board is
+ * never scanned. When no dot can be proven safe, the solver guesses:
+ * at random, or, if it has a <b>ProbabilityEngine</b>, the dot least
+ * likely to be mined (the engine may also find safe dots the two rules
+ * missed, which are not guesses).
+ */
+public class ConstraintSolver implements Strategy {
+
+    private final ProbabilityEngine probabilityEngine;
+    private GameModel gameModel;
+    private int width;
+    private int heigth;
+    private long[] mines;
+    private long[] absorbed;
+    private long[] queued;
+    private CellList safe;
+    private CellList work;
+    private int workHead;
+    private int guesses;
+    private final int[] unknown;
+    private final int[] otherUnknown;
+    private final int[] found;
+    private int unknownCount;
+
+    /**
+     * Constructor, creates a solver guessing at random. It is ready to
+     * play any game.
+     */
+    public ConstraintSolver() {
+        this(null);
+    }
+
+    /**
+     * Constructor, creates a solver guessing with the help of a
+     * probability engine
+     *
+     * @param probabilityEngine
+     *            the engine, or null to guess at random
+     */
+    public ConstraintSolver(ProbabilityEngine probabilityEngine) {
+        this.probabilityEngine = probabilityEngine;
+        safe = new CellList(64);
+        work = new CellList(256);
+        unknown = new int[8];
+        otherUnknown = new int[8];
+        found = new int[8];
+    }
+
+    public int nextMove(GameEngine engine, SplittableRandom random) {
+        GameModel model = engine.getModel();
+        if (model != gameModel || model.getNumberOfSteps() == 0) {
+            newGame(model);
+        }
+        else {
+            absorbChanges();
+        }
+
+        int cell = nextSafe();
+        if (cell >= 0) {
+            return cell;
+        }
+        deduce();
+        cell = nextSafe();
+        if (cell >= 0) {
+            return cell;
+        }
+        if (model.getNumberOfSteps() == 0) {
+            return guess(random);
+        }
+        if (probabilityEngine != null) {
+            return leastLikelyMined(random);
+        }
+        guesses++;
+        return guess(random);
+    }
+
+    /**
+     * Forgets the current game. The next move reads the board as it is,
+     * e.g. when a game is started again on the same model.
+     */
+    public void forget() {
+        gameModel = null;
+    }
+
+    /**
+     * Returns the number of guesses made in the current game, the first
+     * move excepted
+     *
+     * @return the number of guesses
+     */
+    public int getGuesses() {
+        return guesses;
+    }
+
+    /**
+     * Tests if the dot of index cell is known to be mined
+     *
+     * @param cell
+     *            the index of the dot
+     * @return true if the solver proved the dot is mined
+     */
+    public boolean isKnownMine(int cell) {
+        return get(mines, cell);
+    }
+
+    /**
+     * Starts a new game: forgets everything, and reads the uncovered
+     * dots of the board if there are any
+     */
+    private void newGame(GameModel model) {
+        gameModel = model;
+        width = model.getWidth();
+        heigth = model.getHeigth();
+        int words = (width * heigth + 63) >>> 6;
+        if (mines == null || mines.length != words) {
+            mines = new long[words];
+            absorbed = new long[words];
+            queued = new long[words];
+        }
+        else {
+            Arrays.fill(mines, 0L);
+            Arrays.fill(absorbed, 0L);
+            Arrays.fill(queued, 0L);
+        }
+        safe.clear();
+        work.clear();
+        workHead = 0;
+        guesses = 0;
+        if (model.getNumberUncovered() > 0) {
+            absorbAll();
+        }
+    }
+
+    /**
+     * Reads the dots uncovered by the last move
+     */
+    private void absorbChanges() {
+        if (gameModel.hasChangedAll()) {
+            absorbAll();
+            return;
+        }
+        CellList changed = gameModel.getChangedCells();
+        for (int k = 0; k < changed.size(); k++) {
+            int cell = changed.get(k);
+            if (!gameModel.isCovered(cell % width, cell / width)) {
+                absorb(cell);
+            }
+        }
+    }
+
+    /**
+     * Reads every uncovered dot not read yet
+     */
+    private void absorbAll() {
+        for (int cell = 0; cell < width * heigth; cell++) {
+            if (!gameModel.isCovered(cell % width, cell / width)) {
+                absorb(cell);
+            }
+        }
+    }
+
+    /**
+     * An uncovered dot is a new constraint, and changes the constraints
+     * of its uncovered neighboors
+     */
+    private void absorb(int cell) {
+        if (get(absorbed, cell)) {
+            return;
+        }
+        set(absorbed, cell);
+        int i = cell % width;
+        int j = cell / width;
+        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, heigth - 1); y++) {
+            for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, width - 1); x++) {
+                if (!gameModel.isCovered(x, y)) {
+                    enqueue(y * width + x);
+                }
+            }
+        }
+    }
+
+    private void enqueue(int cell) {
+        if (!get(queued, cell)) {
+            set(queued, cell);
+            work.add(cell);
+        }
+    }
+
+    /**
+     * Examines the queued constraints until one of them proves a dot
+     * safe, or none is left
+     */
+    private void deduce() {
+        while (workHead < work.size() && safe.isEmpty()) {
+            int cell = work.get(workHead++);
+            clear(queued, cell);
+            examine(cell);
+        }
+        if (workHead == work.size()) {
+            work.clear();
+            workHead = 0;
+        }
+    }
+
+    /**
+     * Applies the single dot and the pair rules to the constraint of the
+     * uncovered dot of index cell
+     */
+    private void examine(int cell) {
+        int i = cell % width;
+        int j = cell / width;
+        int left = unknownNeighboors(i, j, unknown);
+        if (left < 0) {
+            return;
+        }
+        int count = unknownCount;
+        if (left == 0) {
+            addSafe(unknown, count, null, 0);
+            return;
+        }
+        if (left == count) {
+            addMines(unknown, count, null, 0);
+            return;
+        }
+        for (int y = Math.max(j - 2, 0); y <= Math.min(j + 2, heigth - 1); y++) {
+            for (int x = Math.max(i - 2, 0); x <= Math.min(i + 2, width - 1); x++) {
+                if ((x == i && y == j) || gameModel.isCovered(x, y)) {
+                    continue;
+                }
+                int otherLeft = unknownNeighboors(x, y, otherUnknown);
+                int otherCount = unknownCount;
+                if (otherLeft < 0 || otherCount == 0) {
+                    continue;
+                }
+                // the dots of the larger constraint not in the smaller one hold the difference of their mines;
+                // after a deduction the constraints around have changed, they are queued again
+                if (contains(otherUnknown, otherCount, unknown, count)) {
+                    if (pairRule(otherUnknown, otherCount, unknown, count, otherLeft - left)) {
+                        return;
+                    }
+                }
+                else if (contains(unknown, count, otherUnknown, otherCount)) {
+                    if (pairRule(unknown, count, otherUnknown, otherCount, left - otherLeft)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the pair rule to a constraint containing another one
+     *
+     * @return true if the rule proved something
+     */
+    private boolean pairRule(int[] outer, int outerCount, int[] inner, int innerCount, int difference) {
+        int size = outerCount - innerCount;
+        if (size == 0) {
+            return false;
+        }
+        if (difference == 0) {
+            addSafe(outer, outerCount, inner, innerCount);
+            return true;
+        }
+        if (difference == size) {
+            addMines(outer, outerCount, inner, innerCount);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lists the covered neighboors of (i,j) not known to be mined, in
+     * cells, and stores how many there are in unknownCount.
+     *
+     * @return the number of mines among them, or -1 if (i,j) is mined
+     */
+    private int unknownNeighboors(int i, int j, int[] cells) {
+        if (gameModel.isMined(i, j)) {
+            return -1;
+        }
+        int left = gameModel.getNeighbooringMines(i, j);
+        int count = 0;
+        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, heigth - 1); y++) {
+            for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, width - 1); x++) {
+                if (gameModel.isCovered(x, y)) {
+                    int cell = y * width + x;
+                    if (get(mines, cell)) {
+                        left--;
+                    }
+                    else {
+                        cells[count++] = cell;
+                    }
+                }
+            }
+        }
+        unknownCount = count;
+        return left;
+    }
+
+    /**
+     * Adds the dots of cells that are not in excluded to the safe dots
+     */
+    private void addSafe(int[] cells, int count, int[] excluded, int excludedCount) {
+        for (int k = 0; k < count; k++) {
+            if (excluded == null || !contains(excluded, excludedCount, cells[k])) {
+                safe.add(cells[k]);
+            }
+        }
+    }
+
+    /**
+     * Marks the dots of cells that are not in excluded as mined, and
+     * queues the constraints around them, which have changed
+     */
+    private void addMines(int[] cells, int count, int[] excluded, int excludedCount) {
+        int foundCount = 0;
+        for (int k = 0; k < count; k++) {
+            if ((excluded == null || !contains(excluded, excludedCount, cells[k])) && !get(mines, cells[k])) {
+                set(mines, cells[k]);
+                found[foundCount++] = cells[k];
+            }
+        }
+        for (int k = 0; k < foundCount; k++) {
+            int i = found[k] % width;
+            int j = found[k] / width;
+            for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, heigth - 1); y++) {
+                for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, width - 1); x++) {
+                    if (!gameModel.isCovered(x, y)) {
+                        enqueue(y * width + x);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a safe dot still covered, or -1 if there is none
+     */
+    private int nextSafe() {
+        while (!safe.isEmpty()) {
+            int cell = safe.removeLast();
+            if (gameModel.isCovered(cell % width, cell / width)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks a covered dot not known to be mined, at random
+     */
+    private int guess(SplittableRandom random) {
+        int cells = width * heigth;
+        int start = random.nextInt(cells);
+        for (int k = 0; k < cells; k++) {
+            int cell = (start + k) % cells;
+            if (gameModel.isCovered(cell % width, cell / width) && !get(mines, cell)) {
+                return cell;
+            }
+        }
+        // only known mines are left: the game is won already
+        throw new IllegalStateException("No covered dot left to play");
+    }
+
+    /**
+     * Picks the covered dot least likely to be mined, at random among
+     * the ties. It is a guess unless the dot is certainly safe.
+     */
+    private int leastLikelyMined(SplittableRandom random) {
+        double[] probabilities = probabilityEngine.compute(gameModel);
+        double best = 2;
+        int ties = 0;
+        int choice = -1;
+        for (int cell = 0; cell < probabilities.length; cell++) {
+            if (!gameModel.isCovered(cell % width, cell / width)) {
+                continue;
+            }
+            if (probabilities[cell] < best) {
+                best = probabilities[cell];
+                ties = 1;
+                choice = cell;
+            }
+            else if (probabilities[cell] == best && random.nextInt(++ties) == 0) {
+                choice = cell;
+            }
+        }
+        if (best > 0) {
+            guesses++;
+        }
+        return choice;
+    }
+
+    private static boolean contains(int[] cells, int count, int cell) {
+        for (int k = 0; k < count; k++) {
+            if (cells[k] == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests if outer contains every dot of inner
+     */
+    private static boolean contains(int[] outer, int outerCount, int[] inner, int innerCount) {
+        if (innerCount == 0 || innerCount > outerCount) {
+            return false;
+        }
+        for (int k = 0; k < innerCount; k++) {
+            if (!contains(outer, outerCount, inner[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean get(long[] bits, int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private static void set(long[] bits, int cell) {
+        bits[cell >>> 6] |= 1L << cell;
+    }
+
+    private static void clear(long[] bits, int cell) {
+        bits[cell >>> 6] &= ~(1L << cell);
+    }
+
+   /**
+     * <b>main</b> of the solver. Plays games with the solver and prints
+     * the moves per second and the share of the boards solved without
+     * any guess after the first click.
+     * The parameters are, in order and all optional: the number of
+     * games, the width, the heigth and the number of mines.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int width = args.length > 3 ? Integer.parseInt(args[1]) : 30;
+        int heigth = args.length > 3 ? Integer.parseInt(args[2]) : 16;
+        int numberOfMines = args.length > 3 ? Integer.parseInt(args[3]) : 99;
+
+        GameEngine engine = new GameEngine();
+        ConstraintSolver solver = new ConstraintSolver();
+        SplittableRandom random = new SplittableRandom(42);
+        long moves = 0;
+        int won = 0;
+        int solved = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            engine.newGame(width, heigth, numberOfMines, random.nextLong());
+            while (!engine.isOver()) {
+                int cell = solver.nextMove(engine, random);
+                engine.reveal(cell % width, cell / width);
+                moves++;
+            }
+            if (engine.isWon()) {
+                won++;
+                if (solver.getGuesses() == 0) {
+                    solved++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games %dx%d with %d mines: won %.2f%%, solved without guessing %.2f%%,"
+                + " %.0f moves/s, %.0f games/s%n",
+                games, width, heigth, numberOfMines, 100.0 * won / games, 100.0 * solved / games,
+                moves / seconds, games / seconds);
+    }
+}
@@ -10,7 +10,7 @@ import javax.swing.border.Border;
  * In the application <b>Minesweeper</b>, a <b>DotButton</b> is a specialized type of
  * <b>JButton</b> that represents a square in the game. 
  * It can have a number of possible icons, which are found in the
- * "icons" directory. The icon expresses the state of the dot:
+ * "icons" directory and loaded by <b>IconAtlas</b>. The icon expresses the state of the dot:
  * covered, number of neighbooring mines, exploded..
  * 
  * 
@@ -46,14 +46,6 @@ public class DotButton extends JButton {
     public static final int COVERED             = 11;
     public static final int FLAGGED             = 12;
    
-    /**
-     * An array is used to cache all the images. Since the images are not
-     * modified, all the cells that display the same image reuse the same
-     * <b>ImageIcon</b> object. Notice the use of the keyword <b>static</b>.
-     */
-    private static final ImageIcon[]icons = new ImageIcon[NUMBER_OF_ICONS];
-
-
 
 
     private int column;
@@ -103,6 +95,18 @@ public class DotButton extends JButton {
         
     }
  
+    /**
+     * Getter method for the attribute iconNumber.
+     * 
+     * @return the value of the attribute iconNumber
+     */
+
+    public int getIconNumber() {
+ 
+        return iconNumber;
+        
+    }
+ 
     /**
      * Getter method for the attribute row.
      * 
@@ -129,43 +133,15 @@ public class DotButton extends JButton {
 
     /**
      * Returns the <b>ImageIcon</b> reference to use based on
-     * the current value of the variable iconNumber. 
-     * 
+     * the current value of the variable iconNumber. All the cells that
+     * display the same image reuse the same <b>ImageIcon</b> object,
+     * decoded once by <b>IconAtlas</b>.
+     *
      * @return the image to be displayed by the button
      */
 
     private ImageIcon getImageIcon(){
-    
-
-        if (icons[iconNumber] == null) {
-                icons[iconNumber] = new ImageIcon("icons/" + getIconFileName());
-        }
-        return icons[iconNumber];
-    }
-    /**
-     * This method returns the name of the file containing the image 
-     * corresponding to the current value of the variable iconNumber.
-     *
-     * @return the name of the icon file to be used
-     */
-    private String getIconFileName(){
-        switch(iconNumber) {
-            case 0 : return "Minesweeper_0.png";
-            case 1 : return "Minesweeper_1.png";
-            case 2 : return "Minesweeper_2.png";
-            case 3 : return "Minesweeper_3.png";
-            case 4 : return "Minesweeper_4.png";
-            case 5 : return "Minesweeper_5.png";
-            case 6 : return "Minesweeper_6.png";
-            case 7 : return "Minesweeper_7.png";
-            case 8 : return "Minesweeper_8.png";
-            case 9 : return "Minesweeper_mine.png";
-            case 10 : return "Minesweeper_mineSelected.png";
-            case 11 : return "Minesweeper_unopened_square.png";
-            case 12 : return "Minesweeper_flag.png";
-            default: System.out.println("Invalid icon number: " + iconNumber);
-                     return "";
-        }
 
+        return IconAtlas.get().getIcon(iconNumber);
     }
 }
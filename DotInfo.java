@@ -2,7 +2,13 @@
 /**
  * The class <b>DotInfo</b> is a simple helper class to store 
  * the state (e.g. clicked, mined, number of neighbooring mines...) 
- * at the dot position (x,y)
+ * at the dot position (x,y).
+ * A DotInfo returned by <b>GameModel.get</b> is a read-only view on
+ * the model's <b>BoardStorage</b>: it holds no state of its own and
+ * reads through to the board. Its setters throw an
+ * UnsupportedOperationException, since the dots of a game only change
+ * through <b>GameModel</b>, which keeps its counters, the changed dots
+ * and the moves up to date.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
@@ -15,6 +21,8 @@ public class DotInfo {
      private boolean covered;
      private boolean mined;
      private boolean wasClicked;
+     private BoardStorage storage;
+     private int cell;
 
 
     /**
@@ -34,6 +42,23 @@ public class DotInfo {
         
     }
 
+    /**
+     * Constructor for a view on the dot at location (x,y) of a board
+     * 
+     * @param storage
+     *            the storage holding the state of the board
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     */
+    DotInfo(BoardStorage storage, int x, int y){
+        this.x= x;
+        this.y= y;
+        this.storage= storage;
+        this.cell= y*storage.getWidth() + x;
+    }
+
     /**
      * Getter method for the attribute x.
      * 
@@ -58,6 +83,9 @@ public class DotInfo {
      * Setter for mined
      */
     public void setMined() {
+        if (storage != null) {
+            throw readOnly();
+        }
         mined = true;
 
     }
@@ -68,6 +96,9 @@ public class DotInfo {
      * @return mined
      */
     public boolean isMined() {
+        if (storage != null) {
+            return storage.isMined(cell);
+        }
         return mined;
     }
 
@@ -76,6 +107,9 @@ public class DotInfo {
      * Setter for covered
      */
     public void uncover() {
+        if (storage != null) {
+            throw readOnly();
+        }
         covered = false;
 
     }
@@ -86,6 +120,9 @@ public class DotInfo {
      * @return covered
      */
     public boolean isCovered(){
+        if (storage != null) {
+            return storage.isCovered(cell);
+        }
         return covered;
     
     }
@@ -94,6 +131,9 @@ public class DotInfo {
      * Setter for wasClicked
      */
     public void click() {
+        if (storage != null) {
+            throw readOnly();
+        }
         wasClicked = true;
 
     }
@@ -105,6 +145,9 @@ public class DotInfo {
      * @return wasClicked
      */
     public boolean hasBeenClicked() {
+        if (storage != null) {
+            return storage.hasBeenClicked(cell);
+        }
         return wasClicked;
 
     }
@@ -116,6 +159,9 @@ public class DotInfo {
      *          number of neighbooring mines
      */
     public void setNeighbooringMines(int neighbooringMines) {
+        if (storage != null) {
+            throw readOnly();
+        }
         this.neighbooringMines= neighbooringMines;
     }
 
@@ -125,7 +171,18 @@ public class DotInfo {
      * @return neighbooringMines
      */
     public int getNeighbooringMines() {
+        if (storage != null) {
+            return storage.getNeighbooringMines(cell);
+        }
         return this.neighbooringMines;
     }
 
+    /**
+     * Returns the exception thrown by the setters of a view
+     */
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The dot at (" + x + "," + y
+            + ") is a view on a GameModel: play the moves on the model");
+    }
+
  }
@@ -1,14 +1,31 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.swing.*;
+import javax.swing.SwingUtilities;
 
 
 /**
  * The class <b>GameController</b> is the controller of the game. It is a listener
  * of the view, and has a method <b>play</b> which computes the next
  * step of the game, and  updates model and view.
+ * The rules of the game are applied by a <b>GameEngine</b>; the controller
+ * only forwards the user's actions to it and refreshes the view.
+ * New boards come from a <b>BoardPool</b>, so that reset is immediate.
+ * The system property minesweeper.mode selects the kind of boards:
+ * RANDOM (the default), or NO_GUESS, in which case each game starts with
+ * the middle dot uncovered (RANDOM is used when the mines leave no room
+ * to open the middle dot).
+ * If the system property minesweeper.journal names a directory, every
+ * move is saved there by a <b>MoveJournal</b>, and a game left
+ * unfinished (e.g. when the process died) is resumed at startup.
+ * The moves are played on a thread of their own, the only one to change
+ * the model, in the order of the clicks: the event dispatch thread only
+ * hands them over, and stays free to repaint and take more clicks while
+ * a large zone is uncovered.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
@@ -16,8 +33,13 @@ import javax.swing.*;
 
 public class GameController implements ActionListener {
 
-    private GameModel gameModel;
-    private GameView gameView;
+    private final GameEngine gameEngine;
+    private final GameModel gameModel;
+    private final GameView gameView;
+    private final BoardPool boardPool;
+    private final BoardPool.Mode mode;
+    private final MoveJournal journal;
+    private final ExecutorService gameThread;
 
     /**
      * Constructor used for initializing the controller. It creates the game's view 
@@ -32,14 +54,41 @@ public class GameController implements ActionListener {
      */
     public GameController(int width, int height, int numberOfMines) {
 
-        gameModel = new GameModel(width, height, numberOfMines);
+        BoardPool.Mode mode = BoardPool.Mode.valueOf(System.getProperty("minesweeper.mode", "RANDOM"));
+        if (mode == BoardPool.Mode.NO_GUESS
+                && numberOfMines > NoGuessGenerator.getMaxMines(width, height, width/2, height/2)){
+            System.out.println("Too many mines to start without guessing: " + numberOfMines
+                + " mines on " + (width*height) + " spots leave no room for the opening. Using RANDOM boards.");
+            mode = BoardPool.Mode.RANDOM;
+        }
+        this.mode = mode;
+        boardPool = new BoardPool(2);
+        gameEngine = new GameEngine();
+        journal = openJournal();
+        GameModel recovered = recover();
+        if (recovered == null){
+            gameModel = boardPool.take(width, height, numberOfMines, mode);
+            gameEngine.newGame(gameModel);
+            start();
+        }
+        else {
+            gameModel = recovered;
+            gameModel.setHistoryEnabled(true);
+        }
+        gameThread = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Game");
+            thread.setDaemon(true);
+            return thread;
+        });
         gameView = new GameView(gameModel, this);
-        ///gameView.update();
+        // the view takes clicks as soon as it is shown, once every field
+        // is set: the threads see them as the fields are final
+        SwingUtilities.invokeLater(() -> gameView.setVisible(true));
     }
 
 
     /**
-     * Callback used when the user clicks a button (reset or quit)
+     * Callback used when the user clicks a button (undo, redo, reset or quit)
      *
      * @param e
      *            the ActionEvent
@@ -47,9 +96,16 @@ public class GameController implements ActionListener {
 
     public void actionPerformed(ActionEvent e) {
         
+        if (e.getActionCommand().equals("Undo")){
+            gameThread.execute(() -> travel(gameEngine.undo()));
+        }
+
+        if (e.getActionCommand().equals("Redo")){
+            gameThread.execute(() -> travel(gameEngine.redo()));
+        }
+
         if (e.getActionCommand().equals("Reset")){
-            reset();
-            System.out.print("update");
+            gameThread.execute(this::reset);
         }
 
         if (e.getActionCommand().equals("Quit")){
@@ -59,13 +115,117 @@ public class GameController implements ActionListener {
         if (e.getSource() instanceof DotButton){
             DotButton b;
             b = (DotButton) e.getSource();
-            if(gameModel.isCovered(b.getColumn(), b.getRow())) {
-                play(b.getColumn(), b.getRow());
-            
+            reveal(b.getColumn(), b.getRow());
+
+        }
+    }
+
+    /**
+     * Callback used when the user clicks a square that may still be
+     * covered
+     *
+     * @param column
+     *            the selected column
+     * @param row
+     *            the selected line
+     */
+    void reveal(int column, int row){
+
+        gameThread.execute(() -> {
+            if(gameModel.isCovered(column, row)) {
+                play(column, row);
+            }
+        });
+
+    }
+
+    /**
+     * Callback used when the user right clicks a square: puts a flag
+     * on it, or removes the flag
+     *
+     * @param column
+     *            the selected column
+     * @param row
+     *            the selected line
+     */
+    void flag(int column, int row){
+
+        gameThread.execute(() -> {
+            MoveResult result = gameEngine.flag(column, row);
+            if (journal != null && result.getOutcome() == MoveResult.Outcome.FLAGGED){
+                journal.record(row*gameModel.getWidth() + column, MoveJournal.FLAG);
             }
-            
+            gameView.update();
+        });
+
+    }
+
+    /**
+     * Callback used when the user middle clicks a square: uncovers its
+     * neighboors if all its mines are flagged
+     *
+     * @param column
+     *            the selected column
+     * @param row
+     *            the selected line
+     */
+    void chord(int column, int row){
+
+        gameThread.execute(() -> {
+            long start = GameMetrics.start();
+            MoveResult result = gameEngine.chord(column, row);
+            if (journal != null && result.getOutcome() != MoveResult.Outcome.IGNORED){
+                journal.record(row*gameModel.getWidth() + column, MoveJournal.CHORD);
+            }
+            gameView.update();
+            GameMetrics.play(start);
+            showOutcome(result);
+        });
+
+    }
+
+    /**
+     * Plays a batch of moves, e.g. from a bot or a game replayed: the
+     * moves are applied to the model in one pass, and the view is
+     * refreshed once, with the dots changed by the whole batch. The
+     * batch is played later, on the thread of the game, and must not be
+     * changed afterwards.
+     *
+     * @param batch
+     *            the moves to play
+     */
+    public void play(MoveBatch batch){
+
+        gameThread.execute(() -> {
+            long start = GameMetrics.start();
+            MoveResult result = gameEngine.apply(batch);
+            if (journal != null){
+                // the moves ignored by the engine are ignored again on recovery
+                journal.record(batch);
+            }
+            gameView.update();
+            GameMetrics.play(start);
+            showOutcome(result);
+        });
+
+    }
 
+    /**
+     * Shows the game after a move was undone or redone. The journal, if
+     * any, starts over from the current state of the game.
+     *
+     * @param moved
+     *            true if a move was undone or redone
+     */
+    private void travel(boolean moved){
+
+        if (moved){
+            if (journal != null){
+                journal.newGame(gameModel);
+            }
+            gameView.update();
         }
+
     }
 
     /**
@@ -73,8 +233,81 @@ public class GameController implements ActionListener {
      */
     private void reset(){
 
-        gameModel.reset();
+        long start = GameMetrics.start();
+        gameModel.swap(boardPool.take(gameModel.getWidth(), gameModel.getHeigth(),
+            gameModel.getNumberOfMines(), mode));
+        gameEngine.newGame(gameModel);
+        // the whole new board is sent before the opening move of start()
+        // clears the changes of the model
+        gameView.update();
+        start();
         gameView.update();
+        GameMetrics.reset(start);
+
+    }
+
+    /**
+     * Starts the game: boards without guess are solved from their middle
+     * dot, which is uncovered for the player. The moves are kept from
+     * then on, to be undone. The journal, if any, starts over from the
+     * new board.
+     */
+    private void start(){
+
+        if (mode == BoardPool.Mode.NO_GUESS){
+            gameEngine.reveal(gameModel.getWidth()/2, gameModel.getHeigth()/2);
+        }
+        gameModel.setHistoryEnabled(true);
+        if (journal != null){
+            journal.newGame(gameModel);
+        }
+
+    }
+
+    /**
+     * Opens the journal named by the system property minesweeper.journal,
+     * if there is one
+     *
+     * @return the journal, or null if there is none
+     */
+    private static MoveJournal openJournal(){
+
+        String directory = System.getProperty("minesweeper.journal");
+        if (directory == null){
+            return null;
+        }
+        try {
+            MoveJournal journal = new MoveJournal(Paths.get(directory), MoveJournal.DEFAULT_SNAPSHOT_INTERVAL);
+            // the moves still in memory are written when the window is closed
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+            return journal;
+        } catch (IOException | RuntimeException e){
+            System.err.println("Cannot open the journal in "+directory+": "+e);
+        }
+        return null;
+
+    }
+
+    /**
+     * Recovers the game held by the journal, if any
+     *
+     * @return the model of the recovered game, or null if there is no
+     * unfinished game to resume
+     */
+    private GameModel recover(){
+
+        if (journal == null){
+            return null;
+        }
+        try {
+            GameModel recovered = journal.recover(gameEngine);
+            if (recovered != null && !gameEngine.isOver()){
+                return recovered;
+            }
+        } catch (IOException | RuntimeException e){
+            System.err.println("Cannot recover the game from the journal: "+e);
+        }
+        return null;
 
     }
 
@@ -92,60 +325,31 @@ public class GameController implements ActionListener {
      *            the selected line
      */
     private void play(int width, int heigth){
-        gameModel.step();
-        //System.out.print(gameModel.getNumberOfSteps());
-        gameModel.click(width, heigth);
-        gameModel.uncover(width, heigth);
-        if (gameModel.isMined(width,heigth)){
-            //System.out.print("this is a mine");
-            gameModel.uncoverAll();
-            gameView.update();
-            JOptionPane.showMessageDialog(gameView, "Ouch you lost in "+gameModel.getNumberOfSteps()+" steps, would you like to play again?");
+        long start = GameMetrics.start();
+        MoveResult result = gameEngine.reveal(width, heigth);
+        if (journal != null && result.getOutcome() != MoveResult.Outcome.IGNORED){
+            journal.record(heigth*gameModel.getWidth() + width, MoveJournal.REVEAL);
         }
-
-        // else if (gameModel.isBlank(width, heigth)){
-        //     clearZone(gameModel.get(width, heigth));
-        //     gameView.update();
-        // }
-        else {
-            gameView.update();
-            //System.out.print(gameModel.getNumberOfSteps());
-        }
-        
-        if (gameModel.isFinished()){
-            
-            //JOptionPane.showOptionDialog(gameView, "a");
-            gameView.update();
-        }
-        //System.out.print(width+ "," +heigth);
-        //System.out.print(gameModel.getNeighbooringMines(width, heigth));
+        gameView.update();
+        GameMetrics.play(start);
+        showOutcome(result);
 
     }
 
-   /**
-     * <b>clearZone</b> is the method that computes which new dots should be ``uncovered'' 
-     * when a new square with no mine in its neighborood has been selected
-     * @param initialDot
-     *      the DotInfo object corresponding to the selected DotButton that
-     * had zero neighbouring mines
+    /**
+     * Tells the player that the game is over, if the last move ended it,
+     * with the number of steps played
+     *
+     * @param result
+     *            the result of the last move
      */
-    private void clearZone(DotInfo initialDot){
-        Stack<DotInfo>  stack = new GenericArrayStack<DotInfo>(gameModel.getWidth()*gameModel.getHeigth());
-        stack.push(initialDot);
-
-        DotInfo dotInfo;
-        while(!stack.isEmpty()){
-            dotInfo = stack.pop();
-            for(int i = Math.max(dotInfo.getX()-1, 0); i <= Math.min(dotInfo.getX()+1, gameModel.getWidth()-1); i++) {
-                for(int j = Math.max(dotInfo.getY()-1, 0); j <= Math.min(dotInfo.getY()+1, gameModel.getHeigth()-1); j++) {
-                    if(gameModel.isCovered(i,j)) {
-                        gameModel.uncover(i,j);
-                        if(gameModel.isBlank(i,j)) {
-                            stack.push(gameModel.get(i, j));
-                        }
-                    }
-                }
-            }
+    private void showOutcome(MoveResult result){
+
+        if (result.getOutcome() == MoveResult.Outcome.MINE){
+            gameView.showMessage("Ouch you lost in "+gameModel.getNumberOfSteps()+" steps, would you like to play again?");
+        }
+        else if (result.getOutcome() == MoveResult.Outcome.WON){
+            gameView.showMessage("Congratulations, you won in "+gameModel.getNumberOfSteps()+" steps!");
         }
 
     }
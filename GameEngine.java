@@ -0,0 +1,339 @@
+/**
+ * The class <b>GameEngine</b> applies the rules of the game on a
+ * <b>GameModel</b>, without any user interface. It is used by
+ * <b>GameController</b> for the Swing game, and can be driven directly
+ * by programs (bots, simulations, servers) at full speed.
+ *
+ * An engine is not thread safe: it must be used by one thread at a time.
+ */
+
+public class GameEngine {
+
+    private GameModel gameModel;
+    private MoveResult result;
+    private boolean lost;
+
+    /**
+     * Constructor, creates an engine with no game. <b>newGame</b> must be
+     * called before any move is played.
+     */
+    public GameEngine() {
+
+    }
+
+    /**
+     * Starts a new game. The model of the previous game is reused when
+     * the board has the same size and number of mines.
+     *
+     * @param width
+     *            the width of the board
+     * @param height
+     *            the height of the board
+     * @param numberOfMines
+     *            the number of mines hidden in the board
+     * @param seed
+     *            the seed used to place the mines
+     */
+    public void newGame(int width, int height, int numberOfMines, long seed) {
+        if (gameModel != null && gameModel.getWidth() == width
+                && gameModel.getHeigth() == height && gameModel.getNumberOfMines() == numberOfMines) {
+            gameModel.reset(seed);
+        }
+        else {
+            gameModel = new GameModel(width, height, numberOfMines, seed);
+            result = new MoveResult(gameModel);
+        }
+        lost = false;
+    }
+
+    /**
+     * Starts a new game on a given model, e.g. a board generated or
+     * loaded beforehand. The game goes on from the state of the model.
+     *
+     * @param model
+     *            the model of the game
+     */
+    public void newGame(GameModel model) {
+        if (model != gameModel) {
+            gameModel = model;
+            result = new MoveResult(gameModel);
+        }
+        lost = false;
+    }
+
+    /**
+     * Starts a new game on the same board size, with the mines placed
+     * from a new seed.
+     */
+    public void reset() {
+        gameModel.reset();
+        lost = false;
+    }
+
+    /**
+     * Uncovers the dot at location (x,y). If the dot is mined, the game
+     * is lost and all the dots are uncovered. If it is blank, the zone
+     * around it is uncovered as well.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the result of the move, valid until the next move
+     */
+    public MoveResult reveal(int x, int y) {
+        gameModel.clearChanges();
+        result.setOutcome(revealDot(x, y));
+        return result;
+    }
+
+    /**
+     * Puts a flag on the covered dot at location (x,y), or removes it
+     * if the dot was already flagged.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the result of the move, valid until the next move
+     */
+    public MoveResult flag(int x, int y) {
+        gameModel.clearChanges();
+        result.setOutcome(flagDot(x, y));
+        return result;
+    }
+
+    /**
+     * Chords on the uncovered dot at location (x,y): if as many of its
+     * neighboors are flagged as it has neighbooring mines, all its other
+     * covered neighboors are uncovered, in a single step. The game is
+     * lost if one of them is mined, i.e. if a flag was wrong.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the result of the move, valid until the next move
+     */
+    public MoveResult chord(int x, int y) {
+        gameModel.clearChanges();
+        result.setOutcome(chordDot(x, y));
+        return result;
+    }
+
+    /**
+     * Applies a batch of moves, in order, as if they were played one
+     * after the other, and stops as soon as the game is over. The dots
+     * changed by all the moves are collected in a single result, which
+     * the view can show with one refresh; a dot is listed once, however
+     * many moves of the batch reach it, and the moves on dots uncovered
+     * earlier in the batch are skipped at once. Each move costs what it
+     * costs when played alone; what the batch saves is reading the dots
+     * changed, once for all the moves instead of once per move.
+     *
+     * @param batch
+     *            the moves to apply
+     * @return the result of the whole batch, valid until the next move:
+     *            MINE or WON if the batch ended the game, else SAFE if
+     *            it uncovered dots, FLAGGED if it only flagged dots, or
+     *            IGNORED
+     */
+    public MoveResult apply(MoveBatch batch) {
+        gameModel.clearChanges();
+        int width = gameModel.getWidth();
+        MoveResult.Outcome outcome = MoveResult.Outcome.IGNORED;
+        for (int k = 0; k < batch.size(); k++) {
+            int cell = batch.getCell(k);
+            int x = cell % width;
+            int y = cell / width;
+            MoveResult.Outcome played;
+            switch (batch.getAction(k)) {
+                case MoveBatch.FLAG:
+                    played = flagDot(x, y);
+                    break;
+                case MoveBatch.CHORD:
+                    played = chordDot(x, y);
+                    break;
+                default:
+                    played = revealDot(x, y);
+            }
+            if (played != MoveResult.Outcome.IGNORED
+                    && (played != MoveResult.Outcome.FLAGGED || outcome == MoveResult.Outcome.IGNORED)) {
+                outcome = played;
+            }
+            // only a move on a mine or the last safe dot ends the game
+            if (played == MoveResult.Outcome.MINE || played == MoveResult.Outcome.WON) {
+                break;
+            }
+        }
+        result.setOutcome(outcome);
+        return result;
+    }
+
+    /**
+     * Undoes the last move, if the model keeps its moves (see
+     * <b>GameModel.setHistoryEnabled</b>). A game lost is played again
+     * once the move on the mine is undone.
+     *
+     * @return false if there is no move to undo
+     */
+    public boolean undo() {
+        gameModel.clearChanges();
+        boolean undone = gameModel.undo();
+        lost = hasExploded();
+        return undone;
+    }
+
+    /**
+     * Plays again the last move undone
+     *
+     * @return false if there is no move to redo
+     */
+    public boolean redo() {
+        gameModel.clearChanges();
+        boolean redone = gameModel.redo();
+        lost = hasExploded();
+        return redone;
+    }
+
+    /**
+     * Undoes or redoes moves until the given number of moves is played
+     *
+     * @param move
+     *            the number of moves played afterwards
+     */
+    public void goToMove(int move) {
+        gameModel.clearChanges();
+        gameModel.goToMove(move);
+        lost = hasExploded();
+    }
+
+    /**
+     * Returns true if all the nonmined dots have been uncovered
+     *
+     * @return true if the game is won
+     */
+    public boolean isWon() {
+        return !lost && gameModel.isFinished();
+    }
+
+    /**
+     * Returns true if a mined dot has been uncovered
+     *
+     * @return true if the game is lost
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * Returns true if the game is either won or lost
+     *
+     * @return true if no more move can be played
+     */
+    public boolean isOver() {
+        return lost || gameModel.isFinished();
+    }
+
+    /**
+     * Uncovers the dot at location (x,y), without clearing the changes
+     * of the previous moves
+     */
+    private MoveResult.Outcome revealDot(int x, int y) {
+        if (isOver() || !gameModel.isCovered(x, y) || gameModel.isFlagged(x, y)) {
+            return MoveResult.Outcome.IGNORED;
+        }
+        GameMetrics.move();
+        gameModel.step();
+        gameModel.click(x, y);
+        return uncover(x, y);
+    }
+
+    /**
+     * Puts or removes a flag on the dot at location (x,y), without
+     * clearing the changes of the previous moves
+     */
+    private MoveResult.Outcome flagDot(int x, int y) {
+        if (isOver() || !gameModel.isCovered(x, y)) {
+            return MoveResult.Outcome.IGNORED;
+        }
+        GameMetrics.move();
+        gameModel.flag(x, y);
+        return MoveResult.Outcome.FLAGGED;
+    }
+
+    /**
+     * Chords on the dot at location (x,y), without clearing the changes
+     * of the previous moves
+     */
+    private MoveResult.Outcome chordDot(int x, int y) {
+        if (isOver() || gameModel.isCovered(x, y)) {
+            return MoveResult.Outcome.IGNORED;
+        }
+        int fromX = Math.max(x - 1, 0);
+        int toX = Math.min(x + 1, gameModel.getWidth() - 1);
+        int fromY = Math.max(y - 1, 0);
+        int toY = Math.min(y + 1, gameModel.getHeigth() - 1);
+        int flags = 0;
+        boolean covered = false;
+        for (int j = fromY; j <= toY; j++) {
+            for (int i = fromX; i <= toX; i++) {
+                if (gameModel.isFlagged(i, j)) {
+                    flags++;
+                }
+                else if (gameModel.isCovered(i, j)) {
+                    covered = true;
+                }
+            }
+        }
+        if (!covered || flags != gameModel.getNeighbooringMines(x, y)) {
+            return MoveResult.Outcome.IGNORED;
+        }
+        GameMetrics.move();
+        gameModel.step();
+        MoveResult.Outcome outcome = MoveResult.Outcome.SAFE;
+        for (int j = fromY; j <= toY && outcome == MoveResult.Outcome.SAFE; j++) {
+            for (int i = fromX; i <= toX && outcome == MoveResult.Outcome.SAFE; i++) {
+                if (gameModel.isCovered(i, j) && !gameModel.isFlagged(i, j)) {
+                    outcome = uncover(i, j);
+                }
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Uncovers the covered dot at location (x,y) in the current step: the
+     * whole board if it is mined, the zone around it if it is blank
+     */
+    private MoveResult.Outcome uncover(int x, int y) {
+        gameModel.uncover(x, y);
+        if (gameModel.isMined(x, y)) {
+            lost = true;
+            gameModel.uncoverAll();
+            return MoveResult.Outcome.MINE;
+        }
+        if (gameModel.isBlank(x, y)) {
+            gameModel.clearZone(x, y);
+        }
+        return gameModel.isFinished() ? MoveResult.Outcome.WON : MoveResult.Outcome.SAFE;
+    }
+
+    /**
+     * Returns true if a mined dot is uncovered: the uncovered dots are
+     * more than the nonmined dots uncovered
+     */
+    private boolean hasExploded() {
+        int safe = gameModel.getWidth() * gameModel.getHeigth() - gameModel.getNumberOfMines();
+        return gameModel.getNumberUncovered() > safe - gameModel.getRemainingSafe();
+    }
+
+    /**
+     * Getter method for the model of the current game
+     *
+     * @return the model of the current game
+     */
+    public GameModel getModel() {
+        return gameModel;
+    }
+}
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The class <b>GameMetrics</b> measures where the time of the game goes:
+ * the latency of the moves played by the controller, of the resets, of
+ * <b>GameView.update</b> (sending the changes to the event dispatch
+ * thread), of the refreshes of the board on the event dispatch thread
+ * and of the cascades of <b>clearZone</b>, and counts the moves,
+ * cascades, dots uncovered by cascades, resets, updates and repaints.
+ *
+ * The metrics are off unless the system property minesweeper.metrics is
+ * true. ENABLED is a static final field: when it is false, the JIT drops
+ * the calls to the methods of this class, which then cost nothing. When
+ * it is true, recording a value is an increment of a
+ * <b>LatencyHistogram</b> bucket and of a <b>LongAdder</b>, without lock
+ * or allocation, cheap enough to be left on. The metrics are then
+ * published as the MBean "minesweeper:type=GameMetrics", and printed
+ * every minesweeper.metrics.period seconds if that property is set.
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+    /**
+     * true if the metrics are recorded
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("minesweeper.metrics");
+
+    static final LatencyHistogram PLAY = new LatencyHistogram();
+    static final LatencyHistogram RESET = new LatencyHistogram();
+    static final LatencyHistogram UPDATE = new LatencyHistogram();
+    static final LatencyHistogram REPAINT = new LatencyHistogram();
+    static final LatencyHistogram CASCADE = new LatencyHistogram();
+    static final LatencyHistogram CASCADE_SIZE = new LatencyHistogram();
+    static final LongAdder MOVES = new LongAdder();
+    static final LongAdder CELLS_REVEALED = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new GameMetrics(),
+                        new ObjectName("minesweeper:type=GameMetrics"));
+            } catch (JMException e) {
+                // already registered, e.g. by another class loader
+            }
+            long period = Long.getLong("minesweeper.metrics.period", 0);
+            if (period > 0) {
+                ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "GameMetrics dump");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                dumper.scheduleAtFixedRate(() -> System.out.print(format()), period, period, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Returns the time at which an operation starts
+     *
+     * @return the current time in nanoseconds, or 0 if the metrics are off
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a move played by the engine
+     */
+    static void move() {
+        if (ENABLED) {
+            MOVES.increment();
+        }
+    }
+
+    /**
+     * Records a move played by the controller, view updated included
+     *
+     * @param start
+     *            the time returned by start() when the move began
+     */
+    static void play(long start) {
+        if (ENABLED) {
+            PLAY.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a new game
+     *
+     * @param start
+     *            the time returned by start() when the reset began
+     */
+    static void reset(long start) {
+        if (ENABLED) {
+            RESET.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an update of the view, which sends the changes of a move
+     * to the event dispatch thread
+     *
+     * @param start
+     *            the time returned by start() when the update began
+     */
+    static void update(long start) {
+        if (ENABLED) {
+            UPDATE.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a refresh of the board, on the event dispatch thread
+     *
+     * @param start
+     *            the time returned by start() when the refresh began
+     */
+    static void repaint(long start) {
+        if (ENABLED) {
+            REPAINT.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a cascade
+     *
+     * @param start
+     *            the time returned by start() when the cascade began
+     * @param cells
+     *            the number of dots uncovered by the cascade
+     */
+    static void cascade(long start, int cells) {
+        if (ENABLED) {
+            CASCADE.record(System.nanoTime() - start);
+            CASCADE_SIZE.record(cells);
+            CELLS_REVEALED.add(cells);
+        }
+    }
+
+    public long getMoves() {
+        return MOVES.sum();
+    }
+
+    public long getCascades() {
+        return CASCADE.getCount();
+    }
+
+    public long getCellsRevealed() {
+        return CELLS_REVEALED.sum();
+    }
+
+    public long getResets() {
+        return RESET.getCount();
+    }
+
+    public long getUpdates() {
+        return UPDATE.getCount();
+    }
+
+    public long getRepaints() {
+        return REPAINT.getCount();
+    }
+
+    public double getPlayMeanMicros() {
+        return PLAY.getMean() / 1e3;
+    }
+
+    public double getPlayP99Micros() {
+        return PLAY.getPercentile(99) / 1e3;
+    }
+
+    public double getResetP99Micros() {
+        return RESET.getPercentile(99) / 1e3;
+    }
+
+    public double getUpdateP99Micros() {
+        return UPDATE.getPercentile(99) / 1e3;
+    }
+
+    public double getRepaintP99Micros() {
+        return REPAINT.getPercentile(99) / 1e3;
+    }
+
+    public double getCascadeP99Micros() {
+        return CASCADE.getPercentile(99) / 1e3;
+    }
+
+    public long getCascadeSizeP99() {
+        return CASCADE_SIZE.getPercentile(99);
+    }
+
+    public String dump() {
+        return format();
+    }
+
+    public void clear() {
+        PLAY.reset();
+        RESET.reset();
+        UPDATE.reset();
+        REPAINT.reset();
+        CASCADE.reset();
+        CASCADE_SIZE.reset();
+        MOVES.reset();
+        CELLS_REVEALED.reset();
+    }
+
+    /**
+     * Formats the metrics: the counters, then one line per histogram
+     */
+    static String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("moves %d, cascades %d, dots uncovered by cascades %d, resets %d, updates %d,"
+                + " repaints %d%n", MOVES.sum(), CASCADE.getCount(), CELLS_REVEALED.sum(), RESET.getCount(),
+                UPDATE.getCount(), REPAINT.getCount()));
+        line(text, "play", PLAY, 1e3, "us");
+        line(text, "reset", RESET, 1e3, "us");
+        line(text, "update", UPDATE, 1e3, "us");
+        line(text, "repaint", REPAINT, 1e3, "us");
+        line(text, "cascade", CASCADE, 1e3, "us");
+        line(text, "cascade size", CASCADE_SIZE, 1, "dots");
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, LatencyHistogram histogram, double unit, String label) {
+        text.append(String.format("%-13s count %d, mean %.1f, p50 %.1f, p99 %.1f, max %.1f %s%n", name,
+                histogram.getCount(), histogram.getMean() / unit, histogram.getPercentile(50) / unit,
+                histogram.getPercentile(99) / unit, histogram.getPercentile(100) / unit, label));
+    }
+}
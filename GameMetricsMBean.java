@@ -0,0 +1,48 @@
+/**
+ * Management interface of <b>GameMetrics</b>, read by JMX clients such
+ * as jconsole. The durations are in microseconds.
+ */
+
+public interface GameMetricsMBean {
+
+    public abstract long getMoves();
+
+    public abstract long getCascades();
+
+    public abstract long getCellsRevealed();
+
+    public abstract long getResets();
+
+    public abstract long getUpdates();
+
+    public abstract long getRepaints();
+
+    public abstract double getPlayMeanMicros();
+
+    public abstract double getPlayP99Micros();
+
+    public abstract double getResetP99Micros();
+
+    public abstract double getUpdateP99Micros();
+
+    public abstract double getRepaintP99Micros();
+
+    public abstract double getCascadeP99Micros();
+
+    public abstract long getCascadeSizeP99();
+
+    /**
+     * Returns all the metrics, as printed by the periodic dump
+     *
+     * @return the metrics, one line per histogram
+     */
+
+    public abstract String dump();
+
+    /**
+     * Forgets all the values recorded so far
+     */
+
+    public abstract void clear();
+
+}
@@ -1,3 +1,4 @@
+import java.nio.LongBuffer;
 import java.util.Random;
 
 /**
@@ -8,6 +9,15 @@ import java.util.Random;
  * - the size of the board
  * - the number of steps since the last reset
  *
+ * The state of the dots is kept in a <b>BoardStorage</b> (by default a
+ * <b>PackedBoardStorage</b>), so no object is created per dot.
+ *
+ * Once <b>setHistoryEnabled</b> has been called, the model also keeps
+ * the dots changed by each move, so that moves can be undone and
+ * redone. Only the changes are kept, never a copy of the board: the
+ * memory used grows with the number of dots uncovered, and undoing or
+ * redoing a move costs the number of dots it changed.
+ *
  * The model provides all of this informations to the other classes trough 
  *  appropriate Getters. 
  * The controller can also update the model through Setters.
@@ -15,15 +25,38 @@ import java.util.Random;
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
-public class GameModel {
+public class GameModel implements AutoCloseable {
+
+     /**
+      * beyond this number of changed dots, the whole board is redrawn
+      */
+     static final int MAX_CHANGED = 1 << 20;
+
+     /**
+      * the click recorded for a move which put or removed a flag, and
+      * for a move which has not clicked a dot yet
+      */
+     static final int FLAG_MOVE = -2;
+     static final int NO_CLICK = -1;
 
      private int widthOfGame;
      private int heigthOfGame;
-     private DotInfo[][] model;
+     private BoardStorage model;
      private int numberOfSteps;
      private int numberUncovered;
+     private int remainingSafe;
      private int numberOfMines;
      private java.util.Random generator;
+     private long seed;
+     private CellList revealed;
+     private CellList changed;
+     private long[] changedDots;
+     private boolean changedAll;
+     private CellList history;
+     private CellList moveStarts;
+     private CellList moveClicks;
+     private int currentMove;
+     private boolean replaying;
 
     /**
      * Constructor to initialize the model to a given size of board.
@@ -38,24 +71,68 @@ public class GameModel {
      *            the number of mines to hide in the board
      */
     public GameModel(int width, int heigth, int numberOfMines) {
+
+        this(width, heigth, numberOfMines, new Random().nextLong());
+
+    }
+
+    /**
+     * Constructor to initialize the model to a given size of board,
+     * with the mines placed from the given seed. Two models built
+     * with the same parameters hide their mines at the same places.
+     * 
+     * @param width
+     *            the width of the board
+     * 
+     * @param heigth
+     *            the heigth of the board
+     * 
+     * @param numberOfMines
+     *            the number of mines to hide in the board
+     *
+     * @param seed
+     *            the seed used to place the mines
+     */
+    public GameModel(int width, int heigth, int numberOfMines, long seed) {
+
+        this(new PackedBoardStorage(width, heigth), numberOfMines, seed);
+
+    }
+
+    /**
+     * Constructor to initialize the model on a given storage, e.g. an
+     * <b>OffHeapBoardStorage</b> for boards larger than the heap. The
+     * model owns the storage from then on, and closes it in <b>close</b>.
+     * 
+     * @param storage
+     *            the storage of the board, whose dots are all covered
+     * 
+     * @param numberOfMines
+     *            the number of mines to hide in the board
+     *
+     * @param seed
+     *            the seed used to place the mines
+     */
+    public GameModel(BoardStorage storage, int numberOfMines, long seed) {
         
+        int width = storage.getWidth();
+        int heigth = storage.getHeigth();
+        if (numberOfMines < 0 || numberOfMines > width*heigth){
+            throw new IllegalArgumentException("Cannot hide "+numberOfMines+" mines in "+(width*heigth)+" dots");
+        }
         this.widthOfGame = width;
         this.heigthOfGame = heigth;
         this.numberOfMines = numberOfMines;
         this.numberOfSteps = 0;
         this.numberUncovered = 0;
-        this.model = new DotInfo[width][heigth];
-        this.generator = new Random();
+        this.model = storage;
+        this.generator = new Random(seed);
+        this.seed = seed;
+        this.revealed = new CellList(64);
+        this.changed = new CellList(64);
+        this.changedDots = new long[(width*heigth + 63) / 64];
 
-        for (int i = 0; i < widthOfGame; i++){
-        	for (int j = 0; j < heigthOfGame; j++){
-        		model[i][j] = new DotInfo(i,j);
-        	}
-        }
-
-        for (int a = 0; a < numberOfMines; a++){
-            model[generator.nextInt(widthOfGame)][generator.nextInt(heigthOfGame)].setMined();
-        }
+        placeMines();
 
     }
 
@@ -63,22 +140,108 @@ public class GameModel {
 
     /**
      * Resets the model to (re)start a game. The previous game (if there is one)
-     * is cleared up . 
+     * is cleared up in place, nothing is reallocated. The seed of the
+     * new board is drawn from the seed of the previous one.
      */
    public void reset(){
 
-        for (int row = 0; row < heigthOfGame; row++) {
-            for (int column = 0; column < widthOfGame; column++) {
-                model[column][row] = new DotInfo(column,row);
-            }
+        reset(generator.nextLong());
+    }
+
+    /**
+     * Resets the model to (re)start a game with the mines placed from
+     * the given seed. The previous game (if there is one) is cleared up
+     * in place, nothing is reallocated.
+     *
+     * @param seed
+     *            the seed used to place the mines
+     */
+   public void reset(long seed){
+
+        model.clear();
+        generator.setSeed(seed);
+        this.seed = seed;
+        placeMines();
+        numberOfSteps = 0;
+        numberUncovered = 0;
+        clearHistory();
+    }
+
+    /**
+     * Restarts the game on the same board: every dot is covered again,
+     * the flags are removed and the mines stay where they are.
+     */
+   public void restart(){
+
+        LongBuffer mines = LongBuffer.allocate((widthOfGame*heigthOfGame + 63) / 64);
+        getMines(mines);
+        mines.flip();
+        load(seed, mines);
+    }
+
+
+    /**
+     * Replaces the board by a given one, e.g. read from a file, to 
+     * (re)start a game. The previous game (if there is one) is cleared 
+     * up in place, nothing is reallocated.
+     *
+     * @param seed
+     *            the seed the board was generated from
+     * @param mines
+     *            the mined bitplane of the board: bit (k % 64) of the 
+     *            long number (k / 64) is set if the dot of index k is mined
+     */
+   public void load(long seed, LongBuffer mines){
+
+        int cells = widthOfGame*heigthOfGame;
+        if (mines.remaining() != (cells + 63) / 64){
+            throw new IllegalArgumentException("Expected "+((cells + 63) / 64)+" words, got "+mines.remaining());
         }
-        for (int a = 0; a < numberOfMines; a++){
-            model[generator.nextInt(widthOfGame)][generator.nextInt(heigthOfGame)].setMined();
+        model.clear();
+        changeAll();
+        this.seed = seed;
+        generator.setSeed(seed);
+        int count = 0;
+        for (int k = 0; k < mines.remaining(); k++){
+            long word = mines.get(mines.position() + k);
+            while (word != 0){
+                int cell = (k << 6) + Long.numberOfTrailingZeros(word);
+                if (cell >= cells){
+                    throw new IllegalArgumentException("Mine outside of the board: "+cell);
+                }
+                model.setMined(cell);
+                count++;
+                word &= word - 1;
+            }
         }
+        numberOfMines = count;
+        countNeighbooringMines();
         numberOfSteps = 0;
         numberUncovered = 0;
+        clearHistory();
     }
 
+    /**
+     * Writes the mined bitplane of the board, in the format read by
+     * <b>load</b>
+     *
+     * @param mines
+     *            receives (width*heigth + 63) / 64 words, from its 
+     *            current position
+     */
+   public void getMines(LongBuffer mines){
+
+        int words = (widthOfGame*heigthOfGame + 63) / 64;
+        int start = mines.position();
+        for (int k = 0; k < words; k++){
+            mines.put(start + k, 0L);
+        }
+        for (int cell = model.nextMined(0); cell >= 0; cell = model.nextMined(cell+1)){
+            int k = start + (cell >>> 6);
+            mines.put(k, mines.get(k) | (1L << cell));
+        }
+        mines.position(start + words);
+    }
 
     /**
      * Getter method for the heigth of the game
@@ -91,6 +254,29 @@ public class GameModel {
 
     }
 
+    /**
+     * Getter method for the number of mines of the game
+     * 
+     * @return the value of the attribute numberOfMines
+     */   
+    public int getNumberOfMines(){
+        
+        return numberOfMines;
+
+    }
+
+    /**
+     * Getter method for the seed used to place the mines of the
+     * current board
+     * 
+     * @return the value of the attribute seed
+     */   
+    public long getSeed(){
+        
+        return seed;
+
+    }
+
     /**
      * Getter method for the width of the game
      * 
@@ -115,7 +301,7 @@ public class GameModel {
      */   
     public boolean isMined(int i, int j){
         
-        return model[i][j].isMined();
+        return model.isMined(index(i,j));
 
     }
 
@@ -131,7 +317,7 @@ public class GameModel {
      */   
     public boolean hasBeenClicked(int i, int j){
         
-        return model[i][j].hasBeenClicked();
+        return model.hasBeenClicked(index(i,j));
 
     }
 
@@ -147,7 +333,7 @@ public class GameModel {
      */   
     public boolean isBlank(int i, int j){
         
-        if (model[i][j].getNeighbooringMines() == 0){
+        if (getNeighbooringMines(i,j) == 0){
             return true;
         }
         else {
@@ -166,8 +352,46 @@ public class GameModel {
      */   
     public boolean isCovered(int i, int j){
         
-        return model[i][j].isCovered();
+        return model.isCovered(index(i,j));
+
+
+    }
+
+    /**
+     * returns true if the dot at location (i,j) is flagged, false otherwise
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (i,j)
+     */   
+    public boolean isFlagged(int i, int j){
+        
+        return model.isFlagged(index(i,j));
 
+    }
+
+    /**
+     * Puts a flag on the dot at location (i,j), or removes it if
+     * the dot was already flagged
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return true if the dot is now flagged
+     */   
+    public boolean flag(int i, int j){
+        
+        int cell = index(i,j);
+        if (history != null && !replaying){
+            beginMove(FLAG_MOVE);
+            history.add(cell);
+        }
+        boolean flagged = model.toggleFlag(cell);
+        markChanged(cell);
+        return flagged;
 
     }
 
@@ -182,61 +406,40 @@ public class GameModel {
      * @return the number of neighbooring mines at location (i,j)
      */   
     public int getNeighbooringMines(int i, int j){
-        int nbr=0;
-        int till= (i+2);
-        int down= (j+2);
-        if (i-1>=0 && j-1>=0 && (i+2)<(widthOfGame+1) && (j+2)<(heigthOfGame+1)){
-            for (int startx= (i-1); startx < till; startx++){
-                for (int starty= (j-1); starty < down; starty++){
-                    if (model[startx][starty].isMined()){
-                        nbr= (nbr+1);
-                    }
-                }
-            }
-        }
-        
-        else if (i-1<0 && j-1>=0 && (i+2)<(widthOfGame+1) && (j+2)<(heigthOfGame+1)){
-            for (int startx= (i); startx < till; startx++){
-                for (int starty= (j-1); starty < down; starty++){
-                    if (model[startx][starty].isMined()){
-                        nbr= (nbr+1);
-                    }
-                }
-            }
-        }
-        
 
-        else if (i-1>=0 && j-1<0 && (i+2)<(widthOfGame+1) && (j+2)<(heigthOfGame+1)){
-            for (int startx= (i-1); startx < till; startx++){
-                for (int starty= (j); starty < down; starty++){
-                    if (model[startx][starty].isMined()){
-                        nbr= (nbr+1);
-                    }
-                }
-            }
-        }
+        return model.getNeighbooringMines(index(i,j));
 
-        else if (i-1>=0 && j-1>=00 && (i+2)>=(widthOfGame+1) && (j+2)<(heigthOfGame+1)){
-            for (int startx= (i-1); startx < (i+1); startx++){
-                for (int starty= (j-1); starty < down; starty++){
-                    if (model[startx][starty].isMined()){
-                        nbr= (nbr+1);
-                    }
-                }
-            }
-        }
+    }
 
-        else if (i-1>=0 && j-1>=0 && (i+2)<(widthOfGame+1) && (j+2)>=(heigthOfGame+1)){
-            for (int startx= (i-1); startx < (till); startx++){
-                for (int starty= (j-1); starty < (j+1); starty++){
-                    if (model[startx][starty].isMined()){
-                        nbr= (nbr+1);
-                    }
-                }
-            }
-        }
+    /**
+     * Moves the mine hidden at location (i,j) to the location (k,l),
+     * updating the number of neighbooring mines of the dots around
+     * both locations.
+     *
+     * @param i
+     *            the x coordinate of the mined dot
+     * @param j
+     *            the y coordinate of the mined dot
+     * @param k
+     *            the x coordinate of the new location
+     * @param l
+     *            the y coordinate of the new location
+     */
+    public void moveMine(int i, int j, int k, int l){
 
-        return nbr;
+        if (!isMined(i,j) || isMined(k,l)){
+            throw new IllegalArgumentException("Cannot move a mine from ("+i+","+j+") to ("+k+","+l+")");
+        }
+        model.clearMined(index(i,j));
+        addToNeighboors(i, j, -1);
+        model.setMined(index(k,l));
+        addToNeighboors(k, l, 1);
+        if (isCovered(i,j)){
+            remainingSafe++;
+        }
+        if (isCovered(k,l)){
+            remainingSafe--;
+        }
 
     }
 
@@ -251,17 +454,53 @@ public class GameModel {
      */   
     public void uncover(int i, int j){
         
-        model[i][j].uncover();
-        numberUncovered=0;
-        for (int x=0; x < widthOfGame; x++){
-                for (int y= 0; y < heigthOfGame; y++){
-                    if (!(model[x][y].isCovered())){
-                        numberUncovered= (numberUncovered+1);
-                    }
-                }
+        int cell = index(i,j);
+        if (model.uncover(cell)){
+            countUncovered(cell);
+        }
+
+    }
+
+    /**
+     * Uncovers the zone around the dot at location (i,j): if that dot
+     * has no neighbooring mine, all its neighboors are uncovered, and so
+     * on for every blank dot uncovered on the way. Flagged dots are left
+     * covered. Each dot is visited
+     * at most once, and the work queue is reused from one call to the
+     * next, so no memory is allocated per dot.
+     *
+     * The returned list is also the work queue: it is only valid until
+     * the next call.
+     *
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the indices (y*width + x) of the dots uncovered by this call
+     */
+    public CellList clearZone(int i, int j){
+
+        long time = GameMetrics.start();
+        revealed.clear();
+        int start = index(i,j);
+        int first = 0;
+        if (model.uncover(start)){
+            countUncovered(start);
+            revealed.add(start);
+            first = 1;
+        }
+        if (model.isMined(start) || model.getNeighbooringMines(start) != 0){
+            return revealed;
+        }
+        uncoverNeighboors(start);
+        for (int k = first; k < revealed.size(); k++){
+            int cell = revealed.get(k);
+            if (model.getNeighbooringMines(cell) == 0){
+                uncoverNeighboors(cell);
             }
-        //System.out.print(numberUncovered);
-        //for loop through list for uncovered values
+        }
+        GameMetrics.cascade(time, revealed.size());
+        return revealed;
 
     }
 
@@ -275,7 +514,10 @@ public class GameModel {
      */   
     public void click(int i, int j){
         
-        model[i][j].click();
+        model.click(index(i,j));
+        if (history != null && currentMove > 0 && moveClicks.get(currentMove-1) == NO_CLICK){
+            moveClicks.set(currentMove-1, index(i,j));
+        }
     }
      
      /**
@@ -283,11 +525,19 @@ public class GameModel {
      */   
     public void uncoverAll(){
 
-        for (int i=0; i<widthOfGame; i++){
-            for(int j=0; j<heigthOfGame; j++){
-                model[i][j].uncover();
+        if (history != null){
+            // the move keeps every dot it uncovers, to be able to cover
+            // them again
+            for (int cell = 0; cell < widthOfGame*heigthOfGame; cell++){
+                if (model.isCovered(cell)){
+                    history.add(cell);
+                }
             }
         }
+        model.uncoverAll();
+        numberUncovered = widthOfGame*heigthOfGame;
+        remainingSafe = 0;
+        changeAll();
 
     }
 
@@ -305,22 +555,443 @@ public class GameModel {
   
 
     /**
-     * Getter method for the model's dotInfo reference
-     * at location (i,j)
+     * Returns a read-only <b>DotInfo</b> view on the dot at location
+     * (i,j). The view is created on demand and reads through to the
+     * model; its setters throw an UnsupportedOperationException.
      *
      * @param i
      *            the x coordinate of the dot
      * @param j
      *            the y coordinate of the dot
      *
-     * @return model[i][j]
+     * @return a view on the dot at location (i,j)
      */   
     public DotInfo get(int i, int j) {
         
-        return model[i][j];
+        return new DotInfo(model, i, j);
+
+    }
+
+    /**
+     * Builds a short report on the memory used to store the board,
+     * compared to a grid of <b>DotInfo</b> objects (about 36 bytes
+     * per dot: a 32 bytes object plus its reference in a column array).
+     *
+     * @return the memory report
+     */
+    public String getMemoryReport(){
+
+        long cells = (long) widthOfGame*heigthOfGame;
+        long used = model.getMemoryUsed();
+        return String.format("%dx%d board (%d dots): %d bytes, %.2f bytes per dot (DotInfo grid: ~%d bytes, 36 bytes per dot)",
+                widthOfGame, heigthOfGame, cells, used, (double) used/cells, 36*cells + 16*widthOfGame);
+
+    }
+
+    /**
+     * Hides exactly numberOfMines mines in the board, each set of dots
+     * being equally likely, then updates the number of neighbooring
+     * mines around each of them. Sparse boards use Floyd's sampling, 
+     * with the mined bitplane as the set of chosen dots, in O(mines). 
+     * Dense boards are mined everywhere first, then the nonmined dots
+     * are chosen the same way, so that no array of the size of the
+     * board is kept by the model.
+     */
+    private void placeMines(){
+
+        changeAll();
+
+        int cells = widthOfGame*heigthOfGame;
+        if (2*numberOfMines <= cells){
+            for (int k = cells - numberOfMines; k < cells; k++){
+                int cell = generator.nextInt(k+1);
+                if (model.isMined(cell)){
+                    cell = k;
+                }
+                model.setMined(cell);
+            }
+        }
+        else {
+            for (int cell = 0; cell < cells; cell++){
+                model.setMined(cell);
+            }
+            for (int k = numberOfMines; k < cells; k++){
+                int cell = generator.nextInt(k+1);
+                if (!model.isMined(cell)){
+                    cell = k;
+                }
+                model.clearMined(cell);
+            }
+        }
+        countNeighbooringMines();
+
+    }
+
+    /**
+     * Updates the number of neighbooring mines around each mine, and 
+     * the number of nonmined dots still covered. The mines are visited
+     * in index order, so that the counts are updated row after row.
+     */
+    private void countNeighbooringMines(){
+
+        for (int cell = model.nextMined(0); cell >= 0; cell = model.nextMined(cell+1)){
+            addToNeighboors(cell % widthOfGame, cell / widthOfGame, 1);
+        }
+        remainingSafe = widthOfGame*heigthOfGame - numberOfMines;
+
+    }
+
+    /**
+     * Adds delta to the number of neighbooring mines of the (up to 8)
+     * dots around location (i,j)
+     */
+    private void addToNeighboors(int i, int j, int delta){
+
+        for (int y = Math.max(j-1, 0); y <= Math.min(j+1, heigthOfGame-1); y++){
+            for (int x = Math.max(i-1, 0); x <= Math.min(i+1, widthOfGame-1); x++){
+                if (x != i || y != j){
+                    int cell = index(x,y);
+                    model.setNeighbooringMines(cell, model.getNeighbooringMines(cell) + delta);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Uncovers the covered neighboors of the dot at index cell, and adds
+     * them to the list of revealed dots
+     */
+    private void uncoverNeighboors(int cell){
+
+        int j = cell / widthOfGame;
+        int i = cell - j*widthOfGame;
+        if (i > 0 && j > 0 && i < widthOfGame-1 && j < heigthOfGame-1){
+            // inner dot, no bound to check
+            uncoverNeighboor(cell - widthOfGame - 1);
+            uncoverNeighboor(cell - widthOfGame);
+            uncoverNeighboor(cell - widthOfGame + 1);
+            uncoverNeighboor(cell - 1);
+            uncoverNeighboor(cell + 1);
+            uncoverNeighboor(cell + widthOfGame - 1);
+            uncoverNeighboor(cell + widthOfGame);
+            uncoverNeighboor(cell + widthOfGame + 1);
+            return;
+        }
+        for (int y = Math.max(j-1, 0); y <= Math.min(j+1, heigthOfGame-1); y++){
+            for (int x = Math.max(i-1, 0); x <= Math.min(i+1, widthOfGame-1); x++){
+                uncoverNeighboor(index(x,y));
+            }
+        }
+
+    }
+
+    /**
+     * Uncovers the dot at index cell if it is still covered, and adds
+     * it to the list of revealed dots
+     */
+    private void uncoverNeighboor(int cell){
+
+        if (model.isCovered(cell) && !model.isFlagged(cell) && model.uncover(cell)){
+            countUncovered(cell);
+            revealed.add(cell);
+        }
+
+    }
+
+    /**
+     * Updates the counters after the dot at index cell went from
+     * covered to uncovered
+     */
+    private void countUncovered(int cell){
+
+        numberUncovered++;
+        if (!model.isMined(cell)){
+            remainingSafe--;
+        }
+        markChanged(cell);
+        if (history != null && !replaying){
+            history.add(cell);
+        }
+
+    }
+
+    /**
+     * Starts recording a new move. The moves undone are forgotten, they
+     * cannot be redone anymore.
+     */
+    private void beginMove(int click){
+
+        if (currentMove < moveStarts.size()){
+            history.truncate(moveStarts.get(currentMove));
+            moveStarts.truncate(currentMove);
+            moveClicks.truncate(currentMove);
+        }
+        moveStarts.add(history.size());
+        moveClicks.add(click);
+        currentMove++;
+
+    }
+
+    /**
+     * Forgets the moves kept, if any, e.g. when a new game starts
+     */
+    private void clearHistory(){
+
+        if (history != null){
+            history.clear();
+            moveStarts.clear();
+            moveClicks.clear();
+        }
+        currentMove = 0;
+
+    }
+
+    /**
+     * Records that the dot at index cell must be redrawn. A dot already
+     * listed is not listed again, however many times it changes before
+     * the changes are cleared. Past a quarter of the board (or
+     * MAX_CHANGED dots), the list is dropped and the whole board is
+     * marked as changed instead.
+     */
+    private void markChanged(int cell){
+
+        if (changedAll || (changedDots[cell >>> 6] & (1L << cell)) != 0){
+            return;
+        }
+        if (changed.size() >= Math.min((widthOfGame*heigthOfGame)/4, MAX_CHANGED)){
+            changeAll();
+            return;
+        }
+        changedDots[cell >>> 6] |= 1L << cell;
+        changed.add(cell);
+
+    }
+
+    /**
+     * Marks the whole board as changed, and drops the list of the dots
+     * changed
+     */
+    private void changeAll(){
+
+        forgetChanged();
+        changedAll = true;
+
+    }
+
+    /**
+     * Empties the list of the dots changed, in the time it takes to read
+     * it
+     */
+    private void forgetChanged(){
+
+        for (int k = 0; k < changed.size(); k++){
+            int cell = changed.get(k);
+            changedDots[cell >>> 6] &= ~(1L << cell);
+        }
+        changed.clear();
+
+    }
+
+    /**
+     * Returns the index in the storage of the dot at location (i,j)
+     */
+    private int index(int i, int j){
+        return j*widthOfGame + i;
+    }
+
+
+    /**
+     * Exchanges the board of this model with the board of another model
+     * of the same size, e.g. one generated in advance. Only references
+     * are exchanged, whatever the size of the board. Every dot of both
+     * models is marked as changed.
+     *
+     * @param other
+     *            the model giving its board, and receiving this one
+     */
+    public void swap(GameModel other){
+
+        if (other.widthOfGame != widthOfGame || other.heigthOfGame != heigthOfGame){
+            throw new IllegalArgumentException("Cannot swap a "+other.widthOfGame+"x"+other.heigthOfGame
+                +" board in a "+widthOfGame+"x"+heigthOfGame+" model");
+        }
+        BoardStorage storage = model;
+        model = other.model;
+        other.model = storage;
+        int steps = numberOfSteps;
+        numberOfSteps = other.numberOfSteps;
+        other.numberOfSteps = steps;
+        int uncovered = numberUncovered;
+        numberUncovered = other.numberUncovered;
+        other.numberUncovered = uncovered;
+        int safe = remainingSafe;
+        remainingSafe = other.remainingSafe;
+        other.remainingSafe = safe;
+        int mines = numberOfMines;
+        numberOfMines = other.numberOfMines;
+        other.numberOfMines = mines;
+        long otherSeed = other.seed;
+        other.seed = seed;
+        seed = otherSeed;
+        Random random = generator;
+        generator = other.generator;
+        other.generator = random;
+        changeAll();
+        other.changeAll();
+        clearHistory();
+        other.clearHistory();
+
+    }
+
+    /**
+     * Starts or stops keeping the moves, to undo and redo them. The
+     * moves already played are not kept.
+     *
+     * @param enabled
+     *            true to keep the moves from now on
+     */
+    public void setHistoryEnabled(boolean enabled){
+
+        if (!enabled){
+            history = null;
+            moveStarts = null;
+            moveClicks = null;
+        }
+        else if (history == null){
+            history = new CellList(64);
+            moveStarts = new CellList(64);
+            moveClicks = new CellList(64);
+        }
+        clearHistory();
+
+    }
+
+    /**
+     * Undoes the last move played, or redone: the dots it uncovered are
+     * covered again, or the flag it changed is changed back
+     *
+     * @return false if there is no move to undo
+     */
+    public boolean undo(){
+
+        if (history == null || currentMove == 0){
+            return false;
+        }
+        int move = --currentMove;
+        int start = moveStarts.get(move);
+        int end = move+1 < moveStarts.size() ? moveStarts.get(move+1) : history.size();
+        if (moveClicks.get(move) == FLAG_MOVE){
+            int cell = history.get(start);
+            model.toggleFlag(cell);
+            markChanged(cell);
+            return true;
+        }
+        for (int k = end-1; k >= start; k--){
+            int cell = history.get(k);
+            if (model.cover(cell)){
+                numberUncovered--;
+                if (!model.isMined(cell)){
+                    remainingSafe++;
+                }
+                markChanged(cell);
+            }
+        }
+        numberOfSteps--;
+        return true;
+
+    }
+
+    /**
+     * Plays again the last move undone
+     *
+     * @return false if there is no move to redo
+     */
+    public boolean redo(){
+
+        if (history == null || currentMove == moveStarts.size()){
+            return false;
+        }
+        int move = currentMove++;
+        int start = moveStarts.get(move);
+        int end = move+1 < moveStarts.size() ? moveStarts.get(move+1) : history.size();
+        int click = moveClicks.get(move);
+        replaying = true;
+        if (click == FLAG_MOVE){
+            int cell = history.get(start);
+            model.toggleFlag(cell);
+            markChanged(cell);
+        }
+        else {
+            numberOfSteps++;
+            if (click >= 0){
+                model.click(click);
+            }
+            for (int k = start; k < end; k++){
+                int cell = history.get(k);
+                if (model.uncover(cell)){
+                    countUncovered(cell);
+                }
+            }
+        }
+        replaying = false;
+        return true;
 
     }
 
+    /**
+     * Undoes or redoes moves until the given number of moves is played
+     *
+     * @param move
+     *            the number of moves played afterwards, from 0 (the
+     *            start of the game) to getNumberOfMoves()
+     */
+    public void goToMove(int move){
+
+        if (move < 0 || move > getNumberOfMoves()){
+            throw new IllegalArgumentException("No move "+move+", "+getNumberOfMoves()+" moves kept");
+        }
+        while (currentMove > move){
+            undo();
+        }
+        while (currentMove < move){
+            redo();
+        }
+
+    }
+
+    /**
+     * Returns the number of moves played, not counting the moves undone
+     *
+     * @return the number of the current move
+     */
+    public int getCurrentMove(){
+
+        return currentMove;
+
+    }
+
+    /**
+     * Returns the number of moves kept, including the moves undone that
+     * can be redone
+     *
+     * @return the number of moves kept
+     */
+    public int getNumberOfMoves(){
+
+        return moveStarts == null ? 0 : moveStarts.size();
+
+    }
+
+    /**
+     * Releases the storage of the board. The model cannot be used
+     * afterwards.
+     */
+    public void close(){
+
+        model.close();
+
+    }
 
    /**
      * The metod <b>step</b> updates the number of steps. It must be called 
@@ -329,6 +1000,22 @@ public class GameModel {
      public void step(){
         
         numberOfSteps=numberOfSteps+1;
+        if (history != null){
+            beginMove(NO_CLICK);
+        }
+
+    }
+
+   /**
+     * Sets the number of steps, e.g. when a game saved on disk is
+     * restored
+     *
+     * @param numberOfSteps
+     *            the number of steps already played
+     */
+     public void setNumberOfSteps(int numberOfSteps){
+
+        this.numberOfSteps=numberOfSteps;
 
     }
  
@@ -340,16 +1027,66 @@ public class GameModel {
      */
     public boolean isFinished(){
         
-        if (numberUncovered == (widthOfGame*heigthOfGame)-numberOfMines){
-            return true;
-        }
-        else if (numberUncovered == (widthOfGame*heigthOfGame)){
-            return true;
-        }
+        return remainingSafe == 0;
+    }
+
+    /**
+     * Getter method for the number of uncovered dots
+     *
+     * @return the number of uncovered dots
+     */
+    public int getNumberUncovered(){
+
+        return numberUncovered;
+
+    }
+
+    /**
+     * Getter method for the number of nonmined dots that
+     * are still covered
+     *
+     * @return the number of nonmined dots still covered
+     */
+    public int getRemainingSafe(){
+
+        return remainingSafe;
+
+    }
+
+    /**
+     * Returns the indices (y*width + x) of the dots that changed since
+     * the last call to <b>clearChanges</b>, each dot once. The list is
+     * empty when <b>hasChangedAll</b> returns true.
+     *
+     * @return the dots changed since the last call to clearChanges
+     */
+    public CellList getChangedCells(){
+
+        return changed;
+
+    }
+
+    /**
+     * Returns true if the whole board must be redrawn, e.g. after
+     * a reset or after uncovering all the dots
+     *
+     * @return true if every dot may have changed since the last call
+     * to clearChanges
+     */
+    public boolean hasChangedAll(){
+
+        return changedAll;
+
+    }
+
+    /**
+     * Forgets the changed dots, once the view has redrawn them
+     */
+    public void clearChanges(){
+
+        forgetChanged();
+        changedAll = false;
 
-        else {
-            return false;
-        }
     }
 
 
@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>GameServer</b> hosts many games in one process, without
+ * any window. Each connection is a player with one game at a time (a
+ * session, backed by a <b>GameEngine</b> and its <b>GameModel</b>), and
+ * is served by its own thread: a virtual thread when the JVM has them,
+ * a pooled platform thread otherwise.
+ *
+ * The server listens on a local TCP port or on a Unix domain socket; it
+ * only listens on another interface than the loopback when the system
+ * property minesweeper.server.remote is true. The protocol is made of
+ * lines of ASCII text; each request gets a one line response:
+ * - NEW width heigth mines [seed]: starts a game, answers OK id
+ * - REVEAL x y: uncovers a dot, answers the outcome (SAFE, MINE, WON or
+ * IGNORED) followed by the changed dots as index:icon, or by * when the
+ * whole board changed
+ * - FLAG x y: flags or unflags a dot, answers FLAGGED or IGNORED
+ * - GET x y: answers the icon of a dot (see <b>DotButton</b>)
+ * - STATS: answers the number of active sessions, the moves per second
+ * since the previous STATS and the 99th percentile of the time taken to
+ * play a move, in microseconds
+ * - QUIT: answers BYE and closes the connection
+ * A request that cannot be played is answered by ERROR and a message.
+ */
+public class GameServer implements AutoCloseable {
+
+    static final int DEFAULT_PORT = 7777;
+
+    /**
+     * the longest request accepted, in bytes
+     */
+    static final int MAX_LINE = 128;
+
+    /**
+     * the largest buffer of a <b>LineChannel</b>, in bytes
+     */
+    static final int MAX_BUFFER = 8192;
+
+    private final ServerSocketChannel server;
+    private final Path socketFile;
+    private final ExecutorService executor;
+    private final Thread acceptor;
+    private final ConcurrentHashMap<Integer, GameEngine> sessions;
+    private final AtomicInteger nextId;
+    private final LongAdder moves;
+    private final LatencyHistogram latency;
+    private long lastMoves;
+    private long lastTime;
+
+    /**
+     * Constructor, creates a server listening on an address, and starts
+     * accepting connections
+     *
+     * @param address
+     *            an InetSocketAddress, or a UnixDomainSocketAddress
+     * @throws IOException
+     *            if the server cannot listen on the address
+     */
+    public GameServer(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        }
+        else {
+            socketFile = null;
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address, 1024);
+        this.executor = newThreadPerTaskExecutor();
+        this.sessions = new ConcurrentHashMap<Integer, GameEngine>();
+        this.nextId = new AtomicInteger();
+        this.moves = new LongAdder();
+        this.latency = new LatencyHistogram();
+        this.lastTime = System.nanoTime();
+        this.acceptor = new Thread(this::accept, "GameServer acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Returns the number of games being played
+     *
+     * @return the number of active sessions
+     */
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of moves played since the server started
+     *
+     * @return the number of moves
+     */
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    /**
+     * Returns the histogram of the time taken to play a move, from the
+     * request read to the response written
+     *
+     * @return the latency histogram of the moves
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the statistics of the server, as answered to STATS. The
+     * moves per second are counted since the previous call.
+     *
+     * @return the statistics, on one line
+     */
+    public synchronized String getStats() {
+        long now = System.nanoTime();
+        long total = moves.sum();
+        double perSecond = (total - lastMoves) / ((now - lastTime) / 1e9);
+        lastMoves = total;
+        lastTime = now;
+        return String.format("STATS sessions=%d moves=%d moves/s=%.0f p99=%.1fus",
+                sessions.size(), total, perSecond, latency.getPercentile(99) / 1e3);
+    }
+
+    /**
+     * Stops accepting connections and closes the connections open. The
+     * file of a Unix domain socket is deleted.
+     */
+    public void close() {
+        try {
+            server.close();
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException e) {
+            // the server is stopped anyway
+        }
+        executor.shutdownNow();
+        try {
+            acceptor.join();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop of the acceptor thread: hands each connection to a thread
+     * of its own
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // e.g. too many open files: the next accept may work
+                continue;
+            }
+            try {
+                executor.execute(() -> serve(channel));
+            } catch (RuntimeException e) {
+                // closed while accepting
+                closeQuietly(channel);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Plays the requests of one connection, until QUIT or until the
+     * connection is closed
+     */
+    private void serve(SocketChannel channel) {
+        LineChannel lines = new LineChannel(channel, MAX_LINE);
+        int id = -1;
+        try {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                long start = System.nanoTime();
+                String[] words = line.trim().split(" +");
+                String command = words[0].toUpperCase();
+                try {
+                    switch (command) {
+                    case "NEW":
+                        if (id >= 0) {
+                            sessions.remove(id);
+                        }
+                        id = nextId.getAndIncrement();
+                        sessions.put(id, newGame(words));
+                        lines.writeLine("OK " + id);
+                        break;
+                    case "REVEAL":
+                    case "FLAG":
+                        GameEngine engine = session(id);
+                        int x = coordinate(words, 1, engine.getModel().getWidth());
+                        int y = coordinate(words, 2, engine.getModel().getHeigth());
+                        MoveResult result = command.equals("REVEAL") ? engine.reveal(x, y) : engine.flag(x, y);
+                        lines.writeLine(describe(result, engine.getModel()));
+                        moves.increment();
+                        latency.record(System.nanoTime() - start);
+                        break;
+                    case "GET":
+                        GameModel model = session(id).getModel();
+                        x = coordinate(words, 1, model.getWidth());
+                        y = coordinate(words, 2, model.getHeigth());
+                        lines.writeLine(Integer.toString(GameView.getIcon(model, x, y)));
+                        break;
+                    case "STATS":
+                        lines.writeLine(getStats());
+                        break;
+                    case "QUIT":
+                        lines.writeLine("BYE");
+                        return;
+                    default:
+                        lines.writeLine("ERROR unknown command " + command);
+                    }
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    lines.writeLine("ERROR " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            // the player is gone
+        } finally {
+            if (id >= 0) {
+                sessions.remove(id);
+            }
+            closeQuietly(channel);
+        }
+    }
+
+    private GameEngine session(int id) {
+        GameEngine engine = id < 0 ? null : sessions.get(id);
+        if (engine == null) {
+            throw new IllegalStateException("no game, send NEW first");
+        }
+        return engine;
+    }
+
+    private static GameEngine newGame(String[] words) {
+        if (words.length < 4) {
+            throw new IllegalArgumentException("usage: NEW width heigth mines [seed]");
+        }
+        int width = Integer.parseInt(words[1]);
+        int heigth = Integer.parseInt(words[2]);
+        int numberOfMines = Integer.parseInt(words[3]);
+        if (width < 1 || heigth < 1 || (long) width * heigth > 1 << 20) {
+            throw new IllegalArgumentException("invalid board size " + width + "x" + heigth);
+        }
+        long seed = words.length > 4 ? Long.parseLong(words[4]) : System.nanoTime();
+        GameEngine engine = new GameEngine();
+        engine.newGame(width, heigth, numberOfMines, seed);
+        return engine;
+    }
+
+    private static int coordinate(String[] words, int k, int size) {
+        if (words.length <= k) {
+            throw new IllegalArgumentException("missing coordinate");
+        }
+        int value = Integer.parseInt(words[k]);
+        if (value < 0 || value >= size) {
+            throw new IllegalArgumentException("coordinate out of the board: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Writes the outcome of a move and the dots it changed
+     */
+    private static String describe(MoveResult result, GameModel model) {
+        StringBuilder response = new StringBuilder(result.getOutcome().name());
+        if (result.hasChangedAll()) {
+            return response.append(" *").toString();
+        }
+        CellList changed = result.getChangedCells();
+        int width = model.getWidth();
+        for (int k = 0; k < changed.size(); k++) {
+            int cell = changed.get(k);
+            response.append(' ').append(cell).append(':')
+                    .append(GameView.getIcon(model, cell % width, cell / width));
+        }
+        return response.toString();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Returns an executor running each task in a new virtual thread, if
+     * the JVM has them (Java 21 and later), or else in a cached pool of
+     * daemon platform threads
+     *
+     * @return the executor
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Parses an address: unix:path for a Unix domain socket, a port
+     * number for a TCP port on the loopback interface, or host:port
+     *
+     * @param address
+     *            the address
+     * @param remote
+     *            true if host may be another interface than the loopback
+     * @return the socket address
+     * @throws IllegalArgumentException
+     *            if host is not a loopback address and remote is false
+     */
+    static SocketAddress parseAddress(String address, boolean remote) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(Paths.get(address.substring(5)));
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+        InetSocketAddress inet = new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+        if (!remote && (inet.isUnresolved() || !inet.getAddress().isLoopbackAddress())) {
+            throw new IllegalArgumentException("not a loopback address: " + address
+                    + " (set minesweeper.server.remote to true to allow it)");
+        }
+        return inet;
+    }
+
+    /**
+     * The class <b>LineChannel</b> reads and writes lines of ASCII text
+     * on a blocking channel, with a buffer the size of the longest line
+     * (and its end), up to MAX_BUFFER bytes
+     */
+    static class LineChannel {
+
+        private final SocketChannel channel;
+        private final int maxLine;
+        private final ByteBuffer in;
+        private final StringBuilder line;
+
+        LineChannel(SocketChannel channel, int maxLine) {
+            this.channel = channel;
+            this.maxLine = maxLine;
+            this.in = ByteBuffer.allocate((int) Math.min(maxLine + 2L, MAX_BUFFER));
+            this.line = new StringBuilder();
+            in.flip();
+        }
+
+        /**
+         * Returns the next line, without its end, or null at the end of
+         * the stream
+         */
+        String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                while (in.hasRemaining()) {
+                    char c = (char) in.get();
+                    if (c == '\n') {
+                        return line.toString();
+                    }
+                    if (c != '\r') {
+                        if (line.length() == maxLine) {
+                            throw new IOException("line too long");
+                        }
+                        line.append(c);
+                    }
+                }
+                in.clear();
+                int read = channel.read(in);
+                in.flip();
+                if (read < 0) {
+                    return null;
+                }
+            }
+        }
+
+        void writeLine(String text) throws IOException {
+            ByteBuffer out = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+   /**
+     * <b>main</b> of the server. The parameters are, in order and all
+     * optional: the address (a port, host:port or unix:path) and the
+     * number of seconds between two reports of the statistics. A host
+     * other than the loopback needs the system property
+     * minesweeper.server.remote set to true.
+     *
+     * @param args
+     *            command line parameters
+     * @throws Exception
+     *            if the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = parseAddress(args.length > 0 ? args[0] : Integer.toString(DEFAULT_PORT),
+                Boolean.getBoolean("minesweeper.server.remote"));
+        int period = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        GameServer server = new GameServer(address);
+        System.out.println("Listening on " + address);
+        while (true) {
+            Thread.sleep(period * 1000L);
+            System.out.println(server.getStats());
+        }
+    }
+}
@@ -1,26 +1,58 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.*;
 
 /**
  * The class <b>GameView</b> provides the current view of the entire Game. It extends
  * <b>JFrame</b> and lays out a matrix of <b>DotButton</b> (the actual game) and 
- * two instances of JButton. The action listener for the buttons is the controller.
+ * four instances of JButton (undo, redo, reset and quit). The action listener for the buttons is the controller.
+ * A right click on a DotButton flags it.
+ * Boards of more than MAX_BUTTONS dots are drawn instead by a single
+ * <b>BoardCanvas</b> in a JScrollPane.
+ * The game is played on the thread of the controller: the view gets the
+ * changes of the model as <b>ChangeSet</b>, which the event dispatch
+ * thread shows at most once per frame, all the sets received since the
+ * last frame at once. The icons of a whole board changed are written in
+ * a single <b>ChangeSet.Snapshot</b>, reused from one set to the next.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
 
 public class GameView extends JFrame {
 
+     /**
+      * the largest board shown as a grid of DotButton
+      */
+     static final int MAX_BUTTONS = 100 * 100;
+
+     /**
+      * the shortest time between two refreshes of the board, in milliseconds
+      */
+     static final int FRAME_MILLIS = 16;
+
      private DotButton[][] board;
+     private BoardCanvas canvas;
      private javax.swing.JLabel nbreOfStepsLabel;
      private GameModel gameModel;
      private GameController gameController;
+     private ConcurrentLinkedQueue<ChangeSet> changes;
+     private ChangeSet.Snapshot snapshot;
+     private byte[] icons;
+     private AtomicBoolean scheduled;
+     private Timer frame;
+     private long lastFrame;
 
     /**
-     * Constructor used for initializing the Frame
+     * Constructor used for initializing the Frame. The frame is not
+     * shown: the controller shows it once it is ready for the clicks.
      * 
      * @param gameModel
      *            the model of the game (already initialized)
@@ -32,33 +64,36 @@ public class GameView extends JFrame {
         super("Minesweeper");
         this.gameModel=gameModel;
         this.gameController = gameController;
+        this.changes = new ConcurrentLinkedQueue<ChangeSet>();
+        this.snapshot = new ChangeSet.Snapshot(gameModel.getWidth(), gameModel.getHeigth());
+        this.scheduled = new AtomicBoolean();
+        this.frame = new Timer(FRAME_MILLIS, e -> refresh());
+        this.frame.setRepeats(false);
         //setSize(28*gameModel.getWidth(), 35*gameModel.getHeigth());
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        JPanel grid = new JPanel(new GridLayout(gameModel.getHeigth(), gameModel.getWidth()));
-        //grid.setSize(28*gameModel.getWidth(), 28*gameModel.getHeigth());
-        // add(grid);
-        //setLayout(new GridLayout(gameModel.getHeigth(), gameModel.getWidth()));
-        board = new DotButton[gameModel.getWidth()][gameModel.getHeigth()];
-        this.setVisible(true);
-        for (int row = 0; row < gameModel.getHeigth(); row++){
-            for (int column = 0; column < gameModel.getWidth(); column++){
-                board[column][row] = new DotButton(column, row, 11);
-                board[column][row].addActionListener(gameController);
-                grid.add(board[column][row]);
-            }
+        if ((long) gameModel.getWidth() * gameModel.getHeigth() > MAX_BUTTONS){
+            canvas = new BoardCanvas(gameModel, gameController);
+            add(new JScrollPane(canvas));
+        }
+        else {
+            add(createGrid());
+            icons = new byte[gameModel.getWidth() * gameModel.getHeigth()];
         }
 
-        add(grid);
-        
+        JButton undo = new JButton("Undo");
+        undo.addActionListener(gameController);
+        JButton redo = new JButton("Redo");
+        redo.addActionListener(gameController);
         JButton restart = new JButton("Reset");
         restart.addActionListener(gameController);
         JButton leave = new JButton("Quit");
         leave.addActionListener(gameController);
-        Label steps= new Label();
-        steps.setText("Number of steps : "+gameModel.getNumberOfSteps());
+        nbreOfStepsLabel = new JLabel("Number of steps : "+gameModel.getNumberOfSteps());
         JPanel control = new JPanel();
         control.setBackground(Color.WHITE);
-        control.add(steps);
+        control.add(nbreOfStepsLabel);
+        control.add(undo);
+        control.add(redo);
         control.add(restart);
         control.add(leave);
         add(control, BorderLayout.SOUTH);
@@ -68,32 +103,158 @@ public class GameView extends JFrame {
     }
 
     /**
-     * update the status of the board's DotButton instances based 
-     * on the current game model, then redraws the view
+     * Creates the grid of DotButton showing the board
+     */
+    private JPanel createGrid(){
+        JPanel grid = new JPanel(new GridLayout(gameModel.getHeigth(), gameModel.getWidth()));
+        board = new DotButton[gameModel.getWidth()][gameModel.getHeigth()];
+        MouseAdapter flagListener = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                DotButton b = (DotButton) e.getSource();
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    gameController.flag(b.getColumn(), b.getRow());
+                }
+                else if (SwingUtilities.isMiddleMouseButton(e)) {
+                    gameController.chord(b.getColumn(), b.getRow());
+                }
+            }
+        };
+        for (int row = 0; row < gameModel.getHeigth(); row++){
+            for (int column = 0; column < gameModel.getWidth(); column++){
+                board[column][row] = new DotButton(column, row, getIcon(column, row));
+                board[column][row].addActionListener(gameController);
+                board[column][row].addMouseListener(flagListener);
+                grid.add(board[column][row]);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * sends the changes reported by the game model since the last update
+     * to the event dispatch thread, and clears them. Must be called by
+     * the thread playing the game, after each move. The board is
+     * refreshed at the next frame.
      */
 
     public void update() {
-        int b;
-        b = 11;
-        for (int a = 0; a< gameModel.getWidth(); a++){
-            for (int c = 0; c < gameModel.getHeigth(); c++){
-                if (gameModel.isCovered(a,c)){
-                    b=11;
+        long start = GameMetrics.start();
+        if (gameModel.hasChangedAll() || !gameModel.getChangedCells().isEmpty()){
+            changes.add(ChangeSet.of(gameModel, snapshot));
+            if (scheduled.compareAndSet(false, true)){
+                SwingUtilities.invokeLater(this::scheduleRefresh);
+            }
+        }
+        gameModel.clearChanges();
+        GameMetrics.update(start);
+
+    }
+
+    /**
+     * shows a message once the board shows the changes sent so far. Can
+     * be called from any thread.
+     *
+     * @param message
+     *            the message to show
+     */
+    void showMessage(String message){
+
+        SwingUtilities.invokeLater(() -> {
+            refresh();
+            JOptionPane.showMessageDialog(this, message);
+        });
+
+    }
+
+    /**
+     * refreshes the board now if the last frame is old enough, or when
+     * the next frame is due
+     */
+    private void scheduleRefresh(){
+
+        long elapsed = (System.nanoTime() - lastFrame) / 1_000_000;
+        if (elapsed >= FRAME_MILLIS){
+            refresh();
+        }
+        else {
+            frame.setInitialDelay((int) (FRAME_MILLIS - elapsed));
+            frame.restart();
+        }
+
+    }
+
+    /**
+     * shows every change set received since the last frame. The sets
+     * before the last one changing the whole board are skipped, and so
+     * are the sets received if the whole board changed again since they
+     * were sent: the next frame shows the newer board. Only the buttons
+     * whose icon changed are updated, and each of them repaints its own
+     * bounds; Swing paints them all in one pass.
+     */
+    private void refresh(){
+
+        long start = GameMetrics.start();
+        lastFrame = System.nanoTime();
+        // a set sent from now on schedules the next frame
+        scheduled.set(false);
+        List<ChangeSet> received = new ArrayList<ChangeSet>();
+        for (ChangeSet set = changes.poll(); set != null; set = changes.poll()){
+            if (set.isAll()){
+                received.clear();
+            }
+            received.add(set);
+        }
+        if (received.isEmpty()){
+            return;
+        }
+        if (show(received)){
+            nbreOfStepsLabel.setText("Number of steps : "+received.get(received.size()-1).getNumberOfSteps());
+        }
+        GameMetrics.repaint(start);
+
+    }
+
+    /**
+     * shows change sets, in order
+     *
+     * @return false if a set changing the whole board is out of date
+     */
+    private boolean show(List<ChangeSet> received){
+
+        int width = gameModel.getWidth();
+        for (ChangeSet set : received){
+            if (canvas != null){
+                if (!canvas.setIcons(set)){
+                    return false;
                 }
-                else if (gameModel.isMined(a,c)){
-                    b = 10;
+            }
+            else if (set.isAll()){
+                if (!set.getIcons(icons)){
+                    return false;
                 }
-                else if (gameModel.isFinished() && gameModel.isMined(a,c)){
-                    b = 9;
+                for (int cell = 0; cell < icons.length; cell++){
+                    setIcon(board[cell % width][cell / width], icons[cell]);
                 }
-                else {
-                    b = gameModel.getNeighbooringMines(a,c);
+            }
+            else {
+                for (int k = 0; k < set.size(); k++){
+                    int cell = set.getCell(k);
+                    setIcon(board[cell % width][cell / width], set.getIcon(k));
                 }
-                board[a][c].setIconNumber(b);
             }
         }
-        
-        repaint();
+        return true;
+
+    }
+
+    /**
+     * sets the icon of a button, if it changed
+     */
+    private void setIcon(DotButton button, int icon){
+
+        if (button.getIconNumber() != icon){
+            button.setIconNumber(icon);
+        }
 
     }
 
@@ -108,9 +269,27 @@ public class GameView extends JFrame {
      * @return the icon to use for the dot at location (i,j)
      */   
     private int getIcon(int i, int j){
+
+        return getIcon(gameModel, i, j);
+    }
+
+    /**
+     * returns the icon value that must be used for a given dot 
+     * of a game model. It does not need a view, and can be used
+     * headless.
+     * 
+     * @param gameModel
+     *            the model of the game
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the icon to use for the dot at location (i,j)
+     */   
+    static int getIcon(GameModel gameModel, int i, int j){
         
         if (gameModel.isCovered(i,j)){
-            return 11;
+            return gameModel.isFlagged(i,j) ? 12 : 11;
         }
         else if (gameModel.isMined(i,j)){
             return 10;
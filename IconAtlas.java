@@ -0,0 +1,166 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * The class <b>IconAtlas</b> holds the 13 icons of the game, decoded
+ * once at startup. The icons are read from the classpath (so the game
+ * also runs from a jar), or else from the "icons" directory, all at
+ * the same time, on several threads.
+ *
+ * The icons are packed side by side in a single image (the atlas), of
+ * which a copy is made for each of the sizes in SIZES, scaled once and
+ * for all. The copies are compatible with the screen, so that Java2D
+ * can keep them in video memory. Drawing an icon is a copy of a part of
+ * an atlas: no image is decoded or scaled while the game is played.
+ */
+public class IconAtlas {
+
+    /**
+     * the size of the icon files, in pixels
+     */
+    static final int ICON_SIZE = 28;
+
+    /**
+     * the sizes at which the icons can be drawn, in pixels
+     */
+    static final int[] SIZES = {14, 21, 28, 42, 56};
+
+    private static final String[] FILE_NAMES = {
+        "Minesweeper_0.png", "Minesweeper_1.png", "Minesweeper_2.png", "Minesweeper_3.png",
+        "Minesweeper_4.png", "Minesweeper_5.png", "Minesweeper_6.png", "Minesweeper_7.png",
+        "Minesweeper_8.png", "Minesweeper_mine.png", "Minesweeper_mineSelected.png",
+        "Minesweeper_unopened_square.png", "Minesweeper_flag.png"
+    };
+
+    private final BufferedImage[] atlases;
+    private final ImageIcon[] icons;
+    private final long loadTime;
+
+    private IconAtlas() {
+        long start = System.nanoTime();
+        BufferedImage[] images = new BufferedImage[FILE_NAMES.length];
+        IntStream.range(0, FILE_NAMES.length).parallel().forEach(k -> images[k] = read(FILE_NAMES[k]));
+
+        atlases = new BufferedImage[SIZES.length];
+        for (int s = 0; s < SIZES.length; s++) {
+            int size = SIZES[s];
+            atlases[s] = createImage(size * images.length, size);
+            Graphics2D g = atlases[s].createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            for (int k = 0; k < images.length; k++) {
+                g.drawImage(images[k], k * size, 0, size, size, null);
+            }
+            g.dispose();
+        }
+
+        BufferedImage atlas = atlases[indexOf(ICON_SIZE)];
+        icons = new ImageIcon[images.length];
+        for (int k = 0; k < images.length; k++) {
+            icons[k] = new ImageIcon(atlas.getSubimage(k * ICON_SIZE, 0, ICON_SIZE, ICON_SIZE));
+        }
+        loadTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the atlas of the game, loading it the first time
+     *
+     * @return the atlas
+     */
+    public static IconAtlas get() {
+        return Holder.ATLAS;
+    }
+
+    /**
+     * Returns the icon for a DotButton, at the size of the icon files
+     *
+     * @param iconNumber
+     *            the icon, one of the constants of DotButton
+     * @return the icon
+     */
+    public ImageIcon getIcon(int iconNumber) {
+        return icons[iconNumber];
+    }
+
+    /**
+     * Draws an icon
+     *
+     * @param g
+     *            the graphics to draw to
+     * @param iconNumber
+     *            the icon, one of the constants of DotButton
+     * @param x
+     *            the x coordinate of the top left corner of the icon
+     * @param y
+     *            the y coordinate of the top left corner of the icon
+     * @param size
+     *            the size of the icon, one of SIZES
+     */
+    public void draw(Graphics g, int iconNumber, int x, int y, int size) {
+        int left = iconNumber * size;
+        g.drawImage(atlases[indexOf(size)], x, y, x + size, y + size, left, 0, left + size, size, null);
+    }
+
+    /**
+     * Returns the time it took to read, decode and scale the icons
+     *
+     * @return the load time, in nanoseconds
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    private static int indexOf(int size) {
+        for (int s = 0; s < SIZES.length; s++) {
+            if (SIZES[s] == size) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("No icons of size " + size);
+    }
+
+    /**
+     * Reads an icon from the classpath, or from the icons directory
+     */
+    private static BufferedImage read(String name) {
+        try {
+            URL resource = IconAtlas.class.getResource("/icons/" + name);
+            BufferedImage image = resource != null ? ImageIO.read(resource) : ImageIO.read(new File("icons", name));
+            if (image == null) {
+                throw new IOException("Cannot decode " + name);
+            }
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the icon " + name, e);
+        }
+    }
+
+    /**
+     * Creates an image in the format of the screen, if there is one
+     */
+    private static BufferedImage createImage(int width, int heigth) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, heigth, BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, heigth, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Loads the atlas the first time it is used, once, whatever the thread
+     */
+    private static class Holder {
+        static final IconAtlas ATLAS = new IconAtlas();
+    }
+}
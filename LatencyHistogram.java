@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>LatencyHistogram</b> counts durations (or other
+ * nonnegative values, such as sizes) in buckets of logarithmic size,
+ * so that percentiles can be read at any time with a relative error of
+ * at most 1/SUB_BUCKETS (about 3%), whatever the number of values
+ * recorded. Its size is fixed: recording a value never
+ * allocates, and the histogram can be shared by many threads without
+ * lock.
+ */
+public class LatencyHistogram {
+
+    /**
+     * the number of buckets between two powers of two
+     */
+    static final int SUB_BUCKETS = 32;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+
+    /**
+     * Constructor, creates an empty histogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray((64 - SHIFT + 1) * SUB_BUCKETS);
+        this.count = new LongAdder();
+        this.total = new LongAdder();
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param nanos
+     *            the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+    }
+
+    /**
+     * Returns the number of durations recorded
+     *
+     * @return the number of durations
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the durations recorded
+     *
+     * @return the mean duration, in nanoseconds
+     */
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / n;
+    }
+
+    /**
+     * Returns a percentile of the durations recorded: the upper bound of
+     * the bucket holding it
+     *
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the duration below which that percentage of the durations
+     *            fall, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int k = 0; k < snapshot.length; k++) {
+            snapshot[k] = counts.get(k);
+            n += snapshot[k];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int k = 0; k < snapshot.length; k++) {
+            seen += snapshot[k];
+            if (seen >= rank) {
+                return upperBound(k);
+            }
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Forgets all the durations recorded. Durations recorded during the
+     * call may be kept or not.
+     */
+    public void reset() {
+        for (int k = 0; k < counts.length(); k++) {
+            counts.set(k, 0);
+        }
+        count.reset();
+        total.reset();
+    }
+
+    /**
+     * Returns the bucket of a value: values below SUB_BUCKETS have a
+     * bucket each, then every power of two is split in SUB_BUCKETS
+     * buckets of the same width
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SHIFT;
+        return (exponent + 1) * SUB_BUCKETS + (int) ((value >>> exponent) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value of a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long first = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << exponent;
+        return first + (1L << exponent) - 1;
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>LoadClient</b> simulates many players of a
+ * <b>GameServer</b>, each on its own connection and its own thread
+ * (virtual when the JVM has them). Each player plays random moves on
+ * game after game, without waiting between moves, for a given time.
+ * The client measures the time taken by each move as seen by the
+ * player, from the request written to the response read.
+ */
+public class LoadClient {
+
+    private final SocketAddress address;
+    private final int width;
+    private final int heigth;
+    private final int numberOfMines;
+    private final LatencyHistogram latency;
+    private final LongAdder games;
+    private final LongAdder errors;
+
+    /**
+     * Constructor, creates a client playing on a server, with boards of
+     * a given size
+     *
+     * @param address
+     *            the address of the server
+     * @param width
+     *            the width of the boards
+     * @param heigth
+     *            the heigth of the boards
+     * @param numberOfMines
+     *            the number of mines of the boards
+     */
+    public LoadClient(SocketAddress address, int width, int heigth, int numberOfMines) {
+        this.address = address;
+        this.width = width;
+        this.heigth = heigth;
+        this.numberOfMines = numberOfMines;
+        this.latency = new LatencyHistogram();
+        this.games = new LongAdder();
+        this.errors = new LongAdder();
+    }
+
+    /**
+     * Plays with a number of players at the same time, and waits until
+     * they have all stopped
+     *
+     * @param players
+     *            the number of players
+     * @param millis
+     *            how long each player plays, in milliseconds
+     * @throws InterruptedException
+     *            if interrupted while waiting for the players
+     */
+    public void run(int players, long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        CountDownLatch done = new CountDownLatch(players);
+        ExecutorService executor = GameServer.newThreadPerTaskExecutor();
+        for (int k = 0; k < players; k++) {
+            long seed = k;
+            executor.execute(() -> {
+                try {
+                    play(seed, deadline);
+                } catch (IOException | RuntimeException e) {
+                    errors.increment();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the time taken by the moves, as seen by the players
+     *
+     * @return the latency histogram of the moves
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the number of games started by the players
+     *
+     * @return the number of games
+     */
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Returns the number of players stopped by an error
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Asks the server for its statistics
+     *
+     * @return the STATS line of the server
+     * @throws IOException
+     *            if the server cannot be reached
+     */
+    public String getServerStats() throws IOException {
+        try (SocketChannel channel = open()) {
+            GameServer.LineChannel lines = new GameServer.LineChannel(channel, Integer.MAX_VALUE);
+            lines.writeLine("STATS");
+            String stats = lines.readLine();
+            lines.writeLine("QUIT");
+            lines.readLine();
+            return stats;
+        }
+    }
+
+    private void play(long seed, long deadline) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (SocketChannel channel = open()) {
+            GameServer.LineChannel lines = new GameServer.LineChannel(channel, Integer.MAX_VALUE);
+            String response = "WON";
+            while (System.nanoTime() < deadline) {
+                if (response.startsWith("WON") || response.startsWith("MINE")) {
+                    lines.writeLine("NEW " + width + " " + heigth + " " + numberOfMines + " " + random.nextLong());
+                    expect(lines.readLine(), "OK");
+                    games.increment();
+                }
+                long start = System.nanoTime();
+                lines.writeLine("REVEAL " + random.nextInt(width) + " " + random.nextInt(heigth));
+                response = lines.readLine();
+                latency.record(System.nanoTime() - start);
+                expect(response, "");
+            }
+            lines.writeLine("QUIT");
+            expect(lines.readLine(), "BYE");
+        }
+    }
+
+    private SocketChannel open() throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(address);
+        return channel;
+    }
+
+    private static void expect(String response, String prefix) throws IOException {
+        if (response == null || !response.startsWith(prefix) || response.startsWith("ERROR")) {
+            throw new IOException("Unexpected response: " + response);
+        }
+    }
+
+   /**
+     * <b>main</b> of the client. The parameters are, in order and all
+     * optional: the address of the server (a port, host:port or
+     * unix:path), the number of players, the number of seconds, then
+     * the width, the heigth and the number of mines of the boards. If
+     * the address is "local", a server is started in the same process,
+     * on a Unix domain socket.
+     *
+     * @param args
+     *            command line parameters
+     * @throws Exception
+     *            if the server cannot be reached
+     */
+    public static void main(String[] args) throws Exception {
+        String where = args.length > 0 ? args[0] : "local";
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int width = args.length > 5 ? Integer.parseInt(args[3]) : 30;
+        int heigth = args.length > 5 ? Integer.parseInt(args[4]) : 16;
+        int numberOfMines = args.length > 5 ? Integer.parseInt(args[5]) : 99;
+
+        GameServer server = null;
+        SocketAddress address;
+        if (where.equals("local")) {
+            address = GameServer.parseAddress("unix:" + System.getProperty("java.io.tmpdir") + "/minesweeper.sock", false);
+            server = new GameServer(address);
+        }
+        else {
+            // the server may be on another machine
+            address = GameServer.parseAddress(where, true);
+        }
+        try {
+            LoadClient client = new LoadClient(address, width, heigth, numberOfMines);
+            // the moves per second of the server are counted from here
+            client.getServerStats();
+            long start = System.nanoTime();
+            client.run(players, seconds * 1000L);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            LatencyHistogram latency = client.getLatency();
+            System.out.printf("%d players, %d games, %d moves in %.1f s: %.0f moves/s, %d errors%n",
+                    players, client.getGames(), latency.getCount(), elapsed,
+                    latency.getCount() / elapsed, client.getErrors());
+            System.out.printf("client latency: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    latency.getMean() / 1e3, latency.getPercentile(50) / 1e3,
+                    latency.getPercentile(99) / 1e3, latency.getPercentile(100) / 1e3);
+            System.out.println("server: " + client.getServerStats());
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
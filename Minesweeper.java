@@ -62,6 +62,8 @@ public class Minesweeper {
             numberOfMines = (width*heigth - 1);
         }
    
+        // the icons are decoded while the first board is built
+        new Thread(IconAtlas::get, "IconAtlas loader").start();
         GameController game = new GameController(width, heigth,numberOfMines);
     }
 
@@ -0,0 +1,277 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * The class <b>MonteCarloRunner</b> plays large batches of independent
+ * games with a <b>Strategy</b>, on all the cores of the machine, and
+ * reports statistics on the boards: win rate, moves and cascade sizes.
+ *
+ * Game number k of a batch always uses the same random stream (and
+ * thus the same board and the same random moves), whatever the number
+ * of threads, so a batch can be replayed exactly from its seed.
+ * Each worker thread plays on its own <b>GameEngine</b> and accumulates
+ * in its own <b>Stats</b>; the partial results are only combined at the
+ * end, so the threads share no lock.
+ */
+public class MonteCarloRunner {
+
+    static int DEFAULT_GAMES = 100000;
+    static int DEFAULT_WIDTH = 30;
+    static int DEFAULT_HEIGTH = 16;
+    static double[] DENSITIES = {0.10, 0.12, 0.15, 0.18, 0.20, 0.2063};
+
+    private final ForkJoinPool pool;
+    private final Supplier<Strategy> strategy;
+
+    /**
+     * Constructor, creates a runner using the given number of threads
+     *
+     * @param threads
+     *            the number of worker threads
+     * @param strategy
+     *            creates the strategy of each worker
+     */
+    public MonteCarloRunner(int threads, Supplier<Strategy> strategy) {
+        this.pool = new ForkJoinPool(threads);
+        this.strategy = strategy;
+    }
+
+    /**
+     * Plays a batch of games and returns the combined statistics
+     *
+     * @param games
+     *            the number of games to play
+     * @param width
+     *            the width of the boards
+     * @param heigth
+     *            the heigth of the boards
+     * @param numberOfMines
+     *            the number of mines of each board
+     * @param seed
+     *            the seed of the batch
+     * @return the statistics of the batch
+     */
+    public Stats run(int games, int width, int heigth, int numberOfMines, long seed) {
+        long start = System.nanoTime();
+        Stats stats;
+        try {
+            stats = pool.submit(() -> IntStream.range(0, games).parallel().collect(
+                    () -> new Stats(width, heigth, numberOfMines, strategy.get()),
+                    (s, game) -> s.play(seed, game),
+                    Stats::combine)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Batch failed", e);
+        }
+        stats.time = System.nanoTime() - start;
+        return stats;
+    }
+
+    /**
+     * Shuts down the worker threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the random stream of game number game of a batch
+     */
+    static SplittableRandom randomOf(long seed, int game) {
+        return new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L);
+    }
+
+   /**
+     * <b>main</b> of the runner. Plays a batch of games for several mine
+     * densities and prints the statistics of each batch.
+     * The parameters are, in order and all optional: the number of
+     * games, the width, the heigth, the number of threads, and the
+     * strategy (random, solver, or solver guessing with the
+     * probabilities of the dots).
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : DEFAULT_WIDTH;
+        int heigth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HEIGTH;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        String name = args.length > 4 ? args[4] : "random";
+        Supplier<Strategy> strategy;
+        if (name.equals("solver")) {
+            strategy = ConstraintSolver::new;
+        }
+        else if (name.equals("probability")) {
+            // the workers already use all the threads: each engine enumerates on its own thread
+            strategy = () -> new ConstraintSolver(new ProbabilityEngine(null));
+        }
+        else {
+            strategy = RandomStrategy::new;
+        }
+
+        checkLargeCascade();
+        MonteCarloRunner runner = new MonteCarloRunner(threads, strategy);
+        System.out.println(games + " games per density on " + width + "x" + heigth
+                + " boards, " + threads + " threads, " + name + " strategy");
+        for (double density : DENSITIES) {
+            int mines = (int) Math.round(density * width * heigth);
+            Stats stats = runner.run(games, width, heigth, mines, 42);
+            System.out.printf("density %.3f (%3d mines): %s%n", density, mines, stats);
+        }
+        runner.shutdown();
+    }
+
+    /**
+     * Checks that a cascade uncovering most of the board is counted in
+     * full: on a board with a single mine, the first move away from it
+     * uncovers every other dot, past the size at which the model stops
+     * listing the changed dots.
+     */
+    static void checkLargeCascade() {
+        int width = 40;
+        int heigth = 40;
+        Stats stats = new Stats(width, heigth, 1, (engine, random) -> {
+            GameModel model = engine.getModel();
+            // a blank corner: the mine cannot be next to both opposite corners
+            boolean nearOrigin = model.isMined(0, 0) || model.isMined(1, 0)
+                    || model.isMined(0, 1) || model.isMined(1, 1);
+            return nearOrigin ? width * heigth - 1 : 0;
+        });
+        stats.play(42, 0);
+        if (stats.cascades != 1 || stats.maxCascade != width * heigth - 1) {
+            throw new IllegalStateException("Cascade counted as " + stats.maxCascade + " dots instead of "
+                    + (width * heigth - 1));
+        }
+    }
+
+    /**
+     * The class <b>Stats</b> accumulates the results of the games played
+     * by one worker. Two Stats are merged with <b>combine</b>.
+     */
+    public static class Stats {
+
+        private final GameEngine engine;
+        private final Strategy strategy;
+        private final int width;
+        private final int heigth;
+        private final int numberOfMines;
+        private long games;
+        private long won;
+        private long moves;
+        private long cascades;
+        private long cascadeCells;
+        private int maxCascade;
+        private long time;
+
+        Stats(int width, int heigth, int numberOfMines, Strategy strategy) {
+            this.engine = new GameEngine();
+            this.strategy = strategy;
+            this.width = width;
+            this.heigth = heigth;
+            this.numberOfMines = numberOfMines;
+        }
+
+        /**
+         * Plays game number game of the batch with the given seed
+         */
+        void play(long seed, int game) {
+            SplittableRandom random = randomOf(seed, game);
+            engine.newGame(width, heigth, numberOfMines, random.nextLong());
+            while (!engine.isOver()) {
+                int cell = strategy.nextMove(engine, random);
+                // the list of changed dots is dropped for large cascades:
+                // the dots uncovered are counted instead
+                int before = engine.getModel().getNumberUncovered();
+                MoveResult result = engine.reveal(cell % width, cell / width);
+                moves++;
+                int revealed = engine.getModel().getNumberUncovered() - before;
+                if (result.getOutcome() != MoveResult.Outcome.MINE && revealed > 1) {
+                    cascades++;
+                    cascadeCells += revealed;
+                    maxCascade = Math.max(maxCascade, revealed);
+                }
+            }
+            games++;
+            if (engine.isWon()) {
+                won++;
+            }
+        }
+
+        /**
+         * Adds the results of other to this Stats
+         */
+        void combine(Stats other) {
+            games += other.games;
+            won += other.won;
+            moves += other.moves;
+            cascades += other.cascades;
+            cascadeCells += other.cascadeCells;
+            maxCascade = Math.max(maxCascade, other.maxCascade);
+        }
+
+        /**
+         * Getter method for the number of games played
+         *
+         * @return the number of games played
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * Returns the fraction of the games that were won
+         *
+         * @return the win rate, between 0 and 1
+         */
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) won / games;
+        }
+
+        /**
+         * Returns the throughput of the batch
+         *
+         * @return the number of games played per second
+         */
+        public double getGamesPerSecond() {
+            return time == 0 ? 0 : games * 1e9 / time;
+        }
+
+        public String toString() {
+            return String.format("%d games, win rate %.4f, %.1f moves/game, %.2f cascades/game,"
+                    + " %.1f dots/cascade (max %d), %.0f games/s",
+                    games, getWinRate(), (double) moves / games, (double) cascades / games,
+                    cascades == 0 ? 0.0 : (double) cascadeCells / cascades, maxCascade, getGamesPerSecond());
+        }
+    }
+
+    /**
+     * Uncovers covered dots picked at random
+     */
+    static class RandomStrategy implements Strategy {
+
+        public int nextMove(GameEngine engine, SplittableRandom random) {
+            GameModel model = engine.getModel();
+            int width = model.getWidth();
+            int cells = width * model.getHeigth();
+            for (int tries = 0; tries < 32; tries++) {
+                int cell = random.nextInt(cells);
+                if (model.isCovered(cell % width, cell / width)) {
+                    return cell;
+                }
+            }
+            // the board is almost uncovered, take the first covered dot after a random start
+            int start = random.nextInt(cells);
+            for (int k = 0; k < cells; k++) {
+                int cell = (start + k) % cells;
+                if (model.isCovered(cell % width, cell / width)) {
+                    return cell;
+                }
+            }
+            throw new IllegalStateException("No covered dot left");
+        }
+    }
+}
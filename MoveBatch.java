@@ -0,0 +1,239 @@
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>MoveBatch</b> is a sequence of moves (reveals, flags and
+ * chords) to be applied at once by <b>GameEngine.apply</b>, e.g. the
+ * moves of a bot or of a game replayed. The moves are kept in two
+ * <b>CellList</b>, the dots and the actions, so that a batch can be
+ * cleared and filled again without allocating.
+ */
+public class MoveBatch {
+
+    /**
+     * the actions of a batch: uncovers a dot, puts or removes a flag,
+     * or uncovers the neighboors of a dot which has all its mines flagged
+     */
+    public static final int REVEAL = 0;
+    public static final int FLAG = 1;
+    public static final int CHORD = 2;
+
+    /**
+     * the rounds of main played before the times are printed
+     */
+    static final int WARMUP_ROUNDS = 20;
+
+    private final CellList cells;
+    private final CellList actions;
+
+    /**
+     * Constructor, creates an empty batch
+     */
+    public MoveBatch() {
+        this.cells = new CellList(64);
+        this.actions = new CellList(64);
+    }
+
+    /**
+     * Adds a move at the end of the batch
+     *
+     * @param cell
+     *            the index (y*width + x) of the dot
+     * @param action
+     *            REVEAL, FLAG or CHORD
+     */
+    public void add(int cell, int action) {
+        if (action < REVEAL || action > CHORD) {
+            throw new IllegalArgumentException("Unknown action " + action);
+        }
+        cells.add(cell);
+        actions.add(action);
+    }
+
+    /**
+     * Adds a reveal of the dot at index cell
+     *
+     * @param cell
+     *            the index (y*width + x) of the dot
+     */
+    public void reveal(int cell) {
+        add(cell, REVEAL);
+    }
+
+    /**
+     * Adds a flag on the dot at index cell
+     *
+     * @param cell
+     *            the index (y*width + x) of the dot
+     */
+    public void flag(int cell) {
+        add(cell, FLAG);
+    }
+
+    /**
+     * Adds a chord on the dot at index cell
+     *
+     * @param cell
+     *            the index (y*width + x) of the dot
+     */
+    public void chord(int cell) {
+        add(cell, CHORD);
+    }
+
+    /**
+     * Returns the number of moves in the batch
+     *
+     * @return the number of moves
+     */
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * Returns the dot of the k-th move
+     *
+     * @param k
+     *            the position of the move in the batch
+     * @return the index (y*width + x) of the dot
+     */
+    public int getCell(int k) {
+        return cells.get(k);
+    }
+
+    /**
+     * Returns the action of the k-th move
+     *
+     * @param k
+     *            the position of the move in the batch
+     * @return REVEAL, FLAG or CHORD
+     */
+    public int getAction(int k) {
+        return actions.get(k);
+    }
+
+    /**
+     * Removes all the moves, keeping the memory for the next ones
+     */
+    public void clear() {
+        cells.clear();
+        actions.clear();
+    }
+
+   /**
+     * <b>main</b> of the batch: records a game of many moves, then
+     * replays it twice on the same board, one move at a time with the
+     * changed dots read after each move (as the view does after each
+     * click), then in a single batch with the changed dots read once.
+     * Prints both times and checks that the boards are the same. Both
+     * ways are first played WARMUP_ROUNDS times without being printed,
+     * until the JIT has compiled them: the batch loop runs once per
+     * round, the moves one by one run thousands of times. The
+     * parameters are, in order and all optional: the number of moves,
+     * the side of the board and the number of mines.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int side = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int numberOfMines = args.length > 2 ? Integer.parseInt(args[2]) : side * side / 5;
+
+        // the game: random moves, safe reveals mostly, with some flags
+        // and chords, and reveals of dots already uncovered
+        GameEngine engine = new GameEngine();
+        engine.newGame(side, side, numberOfMines, 1);
+        GameModel model = engine.getModel();
+        SplittableRandom random = new SplittableRandom(1);
+        MoveBatch game = new MoveBatch();
+        while (game.size() < moves && !engine.isOver()) {
+            int cell = random.nextInt(side * side);
+            int x = cell % side;
+            int y = cell / side;
+            int dice = random.nextInt(10);
+            if (dice == 0) {
+                engine.flag(x, y);
+                game.flag(cell);
+            }
+            else if (dice == 1) {
+                engine.chord(x, y);
+                game.chord(cell);
+            }
+            else if (!model.isMined(x, y) || !model.isCovered(x, y)) {
+                engine.reveal(x, y);
+                game.reveal(cell);
+            }
+        }
+
+        for (int round = -WARMUP_ROUNDS; round < 5; round++) {
+            GameEngine single = new GameEngine();
+            single.newGame(side, side, numberOfMines, 1);
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int k = 0; k < game.size(); k++) {
+                int cell = game.getCell(k);
+                int x = cell % side;
+                int y = cell / side;
+                MoveResult result;
+                switch (game.getAction(k)) {
+                    case FLAG:
+                        result = single.flag(x, y);
+                        break;
+                    case CHORD:
+                        result = single.chord(x, y);
+                        break;
+                    default:
+                        result = single.reveal(x, y);
+                }
+                checksum += refresh(single.getModel(), result);
+            }
+            long singleTime = System.nanoTime() - start;
+
+            GameEngine batched = new GameEngine();
+            batched.newGame(side, side, numberOfMines, 1);
+            start = System.nanoTime();
+            MoveResult result = batched.apply(game);
+            long changed = refresh(batched.getModel(), result);
+            long batchTime = System.nanoTime() - start;
+
+            boolean same = batched.getModel().getNumberUncovered() == model.getNumberUncovered()
+                    && batched.getModel().getNumberOfSteps() == model.getNumberOfSteps()
+                    && single.getModel().getNumberUncovered() == model.getNumberUncovered();
+            for (int j = 0; j < side && same; j++) {
+                for (int i = 0; i < side; i++) {
+                    if (GameView.getIcon(batched.getModel(), i, j) != GameView.getIcon(model, i, j)) {
+                        same = false;
+                        break;
+                    }
+                }
+            }
+            if (round < 0) {
+                continue;
+            }
+            System.out.printf("%d moves: one by one %.2f ms (%d dots refreshed), batch %.2f ms (%d dots"
+                    + " refreshed, %s): %s%n", game.size(), singleTime / 1e6, checksum, batchTime / 1e6,
+                    changed, result.getOutcome(), same ? "same game" : "DIFFERENT GAME");
+        }
+    }
+
+    /**
+     * Reads the icons of the dots changed by a move, as a view would
+     *
+     * @return the number of dots read
+     */
+    private static long refresh(GameModel model, MoveResult result) {
+        if (result.hasChangedAll()) {
+            for (int j = 0; j < model.getHeigth(); j++) {
+                for (int i = 0; i < model.getWidth(); i++) {
+                    GameView.getIcon(model, i, j);
+                }
+            }
+            return (long) model.getWidth() * model.getHeigth();
+        }
+        CellList cells = result.getChangedCells();
+        for (int k = 0; k < cells.size(); k++) {
+            int cell = cells.get(k);
+            GameView.getIcon(model, cell % model.getWidth(), cell / model.getWidth());
+        }
+        return cells.size();
+    }
+}
@@ -0,0 +1,601 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>MoveJournal</b> saves a game on disk as it is played, so
+ * that it can be resumed after the process dies. It keeps two files in
+ * a directory:
+ * - "journal", appended with one record of 16 bytes per move (index of
+ * the dot, action, time in milliseconds), after a header of 32 bytes
+ * (magic number, width, heigth, number of mines, seed and creation time)
+ * - "snapshot", the whole game (board, uncovered, clicked and flagged
+ * bitplanes, number of steps) after a given number of records of the
+ * journal. It is written to a temporary file, forced, then renamed, so
+ * that it is always complete.
+ * The creation time of the journal is also written in its snapshots: a
+ * journal is only replayed on a snapshot of the same game. A new game
+ * writes its snapshot before it empties the journal, so a crash at any
+ * time leaves either the old game or the new one on disk.
+ * Everything is little endian.
+ *
+ * Recovering a game loads the snapshot and plays the records written
+ * after it again, so the time it takes is bounded by the snapshot
+ * interval, not by the length of the game.
+ *
+ * The moves are written by a background thread, with group commit:
+ * all the records appended while a batch is being forced to disk are
+ * written, and forced, together in the next batch. Recording a move
+ * never waits for the disk; a crash loses at most the last batch.
+ * The journal must be used by the thread playing the game.
+ */
+public class MoveJournal implements AutoCloseable {
+
+    static final int JOURNAL_MAGIC = 0x4A53_4E4D; // "MNSJ"
+    static final int SNAPSHOT_MAGIC = 0x5353_4E4D; // "MNSS"
+    static final int HEADER_SIZE = 32;
+    static final int SNAPSHOT_HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 16;
+    static final int DEFAULT_SNAPSHOT_INTERVAL = 10000;
+
+    /**
+     * the actions recorded in the journal
+     */
+    public static final int REVEAL = MoveBatch.REVEAL;
+    public static final int FLAG = MoveBatch.FLAG;
+    public static final int CHORD = MoveBatch.CHORD;
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Path temporaryFile;
+    private final int snapshotInterval;
+    private final Thread writer;
+    private FileChannel journal;
+    private GameModel gameModel;
+    private long records;
+    private long created;
+
+    // guarded by this
+    private ByteBuffer pending;
+    private byte[] pendingGame;
+    private byte[] pendingSnapshot;
+    private long appended;
+    private long written;
+    private long syncs;
+    private boolean writing;
+    private int generation;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructor, creates a journal in a directory, which is created if
+     * needed, and starts its background thread
+     *
+     * @param directory
+     *            the directory holding the files of the journal
+     * @param snapshotInterval
+     *            the number of moves between two snapshots
+     * @throws IOException
+     *            if the directory cannot be created
+     */
+    public MoveJournal(Path directory, int snapshotInterval) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Invalid snapshot interval " + snapshotInterval);
+        }
+        Files.createDirectories(directory);
+        this.journalFile = directory.resolve("journal");
+        this.snapshotFile = directory.resolve("snapshot");
+        this.temporaryFile = directory.resolve("snapshot.tmp");
+        this.snapshotInterval = snapshotInterval;
+        this.pending = ByteBuffer.allocate(64 * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.writer = new Thread(this::write, "MoveJournal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Recovers the game saved in the directory, if there is one: loads
+     * the snapshot in a new model, starts a game on it with the engine,
+     * and plays the moves of the journal written after the snapshot.
+     * The moves played afterwards are appended to the same journal.
+     *
+     * @param gameEngine
+     *            the engine playing the recovered game
+     * @return the model of the recovered game, or null if there is no
+     *            game to recover
+     * @throws IOException
+     *            if the files of the journal cannot be read
+     */
+    public GameModel recover(GameEngine gameEngine) throws IOException {
+        ByteBuffer snapshot;
+        try {
+            snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile)).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (snapshot.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a snapshot: " + snapshotFile);
+        }
+        long snapshotRecords = snapshot.getLong();
+        int steps = snapshot.getInt();
+        long snapshotCreated = snapshot.getLong();
+        GameModel model = BoardCodec.decode(snapshot);
+        restore(model, snapshot);
+        model.setNumberOfSteps(steps);
+        gameEngine.newGame(model);
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long count = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        if (count < snapshotRecords || !isJournalOf(channel, model, snapshotCreated)) {
+            // the journal was lost, or belongs to another game: the game
+            // goes on from the snapshot, in a new journal
+            channel.close();
+            startGame(model);
+            return model;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) ((count - snapshotRecords) * RECORD_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long position = HEADER_SIZE + snapshotRecords * RECORD_SIZE;
+        while (tail.hasRemaining()) {
+            position += channel.read(tail, position);
+        }
+        tail.flip();
+        // the moves are played again in one batch
+        MoveBatch batch = new MoveBatch();
+        while (tail.hasRemaining()) {
+            int cell = tail.getInt();
+            int action = tail.getInt();
+            tail.getLong();
+            if (action == REVEAL || action == FLAG || action == CHORD) {
+                batch.add(cell, action);
+            }
+        }
+        gameEngine.apply(batch);
+        // a record torn by the crash is overwritten by the next one
+        channel.truncate(position);
+        channel.position(position);
+        synchronized (this) {
+            journal = channel;
+            gameModel = model;
+            created = snapshotCreated;
+            records = count;
+            appended = count;
+            written = count;
+        }
+        return model;
+    }
+
+    /**
+     * Starts journaling a new game: the journal is emptied and a
+     * snapshot of the model is saved, in the background
+     *
+     * @param model
+     *            the model of the new game, which may already have been
+     *            played
+     */
+    public void newGame(GameModel model) {
+        startGame(model);
+    }
+
+    /**
+     * Appends a move, once it has been applied to the model. Every
+     * snapshot interval, a snapshot of the model is taken as well.
+     * A game must have been started with <b>newGame</b> or
+     * <b>recover</b> first.
+     *
+     * @param cell
+     *            the index (y*width + x) of the dot
+     * @param action
+     *            REVEAL, FLAG or CHORD
+     */
+    public void record(int cell, int action) {
+        records++;
+        byte[] snapshot = records % snapshotInterval == 0 ? snapshot(gameModel, records, created) : null;
+        synchronized (this) {
+            if (closed || failure != null) {
+                return;
+            }
+            append(cell, action, System.currentTimeMillis());
+            if (snapshot != null) {
+                pendingSnapshot = snapshot;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Appends the moves of a batch, once the batch has been applied to
+     * the model. A snapshot is taken at the end of the batch if it
+     * crosses a snapshot interval, so that the snapshot never holds a
+     * part of a batch only.
+     *
+     * @param batch
+     *            the moves of the batch
+     */
+    public void record(MoveBatch batch) {
+        long first = records;
+        records += batch.size();
+        byte[] snapshot = records / snapshotInterval != first / snapshotInterval
+                ? snapshot(gameModel, records, created) : null;
+        synchronized (this) {
+            if (closed || failure != null) {
+                return;
+            }
+            long millis = System.currentTimeMillis();
+            for (int k = 0; k < batch.size(); k++) {
+                append(batch.getCell(k), batch.getAction(k), millis);
+            }
+            if (snapshot != null) {
+                pendingSnapshot = snapshot;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Adds a record to the pending buffer, which grows as needed. The
+     * lock must be held.
+     */
+    private void append(int cell, int action, long millis) {
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(2 * pending.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.putInt(cell);
+        pending.putInt(action);
+        pending.putLong(millis);
+        appended++;
+    }
+
+    /**
+     * Waits until every move recorded so far is on disk
+     *
+     * @throws IOException
+     *            if the journal could not be written
+     * @throws InterruptedException
+     *            if interrupted while waiting
+     */
+    public synchronized void sync() throws IOException, InterruptedException {
+        while (failure == null && !closed && (writing || written < appended
+                || pendingGame != null || pendingSnapshot != null)) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the number of moves of the current game in the journal
+     *
+     * @return the number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of times the journal was forced to disk. Each
+     * time, all the records appended since the previous time are forced
+     * together.
+     *
+     * @return the number of fsyncs
+     */
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * Writes the moves still in memory, then stops the background thread
+     */
+    public void close() {
+        try {
+            sync();
+        } catch (IOException | InterruptedException e) {
+            // the moves that could not be written are lost, as in a crash
+        }
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startGame(GameModel model) {
+        gameModel = model;
+        records = 0;
+        // the creation time tells the journals apart: it never repeats
+        created = Math.max(System.currentTimeMillis(), created + 1);
+        byte[] snapshot = snapshot(model, 0, created);
+        synchronized (this) {
+            // the moves of the previous game still in memory are dropped
+            pending.clear();
+            pendingGame = snapshot;
+            pendingSnapshot = null;
+            appended = 0;
+            written = 0;
+            generation++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * The loop of the background thread: writes and forces the records
+     * appended since the previous batch, and the snapshots
+     */
+    private void write() {
+        ByteBuffer batch = ByteBuffer.allocate(pending.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        while (true) {
+            byte[] game;
+            byte[] snapshot;
+            long upTo;
+            int batchGeneration;
+            synchronized (this) {
+                while (!closed && pendingGame == null && pending.position() == 0 && pendingSnapshot == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    closeJournal();
+                    return;
+                }
+                game = pendingGame;
+                snapshot = pendingSnapshot;
+                pendingGame = null;
+                pendingSnapshot = null;
+                // swap the buffers: the records appended from now on go
+                // in the next batch
+                pending.flip();
+                ByteBuffer full = pending;
+                batch.clear();
+                pending = batch;
+                batch = full;
+                upTo = appended;
+                batchGeneration = generation;
+                writing = true;
+            }
+            try {
+                if (game != null) {
+                    // the old game is on disk until the new snapshot replaces it
+                    writeSnapshot(game);
+                    createJournal(game);
+                }
+                while (batch.hasRemaining()) {
+                    journal.write(batch);
+                }
+                journal.force(false);
+                if (snapshot != null) {
+                    writeSnapshot(snapshot);
+                }
+                synchronized (this) {
+                    if (batchGeneration == generation) {
+                        written = Math.max(written, upTo);
+                    }
+                    writing = false;
+                    syncs++;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    writing = false;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal by an empty one, whose header is taken from
+     * the snapshot of a new game, already on disk. Until the header is
+     * written, the journal does not match the new snapshot and is not
+     * replayed.
+     */
+    private void createJournal(byte[] snapshot) throws IOException {
+        closeJournal();
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer board = ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(JOURNAL_MAGIC);
+        header.putInt(board.getInt(SNAPSHOT_HEADER_SIZE + 4));
+        header.putInt(board.getInt(SNAPSHOT_HEADER_SIZE + 8));
+        header.putInt(board.getInt(SNAPSHOT_HEADER_SIZE + 12));
+        header.putLong(board.getLong(SNAPSHOT_HEADER_SIZE + 16));
+        header.putLong(board.getLong(16));
+        header.flip();
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+    }
+
+    private void writeSnapshot(byte[] snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // nothing more can be written anyway
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Returns true if the header of a journal matches the board of a
+     * model, and the creation time read from its snapshot
+     */
+    private static boolean isJournalOf(FileChannel channel, GameModel model, long created) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        return !header.hasRemaining() && header.getInt(0) == JOURNAL_MAGIC
+                && header.getInt(4) == model.getWidth() && header.getInt(8) == model.getHeigth()
+                && header.getInt(12) == model.getNumberOfMines() && header.getLong(16) == model.getSeed()
+                && header.getLong(24) == created;
+    }
+
+    /**
+     * Encodes the state of a model: magic number, number of records,
+     * number of steps, creation time of the journal, the board (see <b>BoardCodec</b>), then the
+     * uncovered, clicked and flagged bitplanes
+     */
+    static byte[] snapshot(GameModel model, long count, long created) {
+        int width = model.getWidth();
+        int heigth = model.getHeigth();
+        int words = BoardCodec.words(width, heigth);
+        ByteBuffer out = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + BoardCodec.encodedSize(width, heigth) + 3 * 8 * words)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(SNAPSHOT_MAGIC);
+        out.putLong(count);
+        out.putInt(model.getNumberOfSteps());
+        out.putLong(created);
+        BoardCodec.encode(model, out);
+        long[] uncovered = new long[words];
+        long[] clicked = new long[words];
+        long[] flagged = new long[words];
+        for (int j = 0; j < heigth; j++) {
+            for (int i = 0; i < width; i++) {
+                int cell = j * width + i;
+                if (!model.isCovered(i, j)) {
+                    uncovered[cell >>> 6] |= 1L << cell;
+                }
+                else if (model.isFlagged(i, j)) {
+                    flagged[cell >>> 6] |= 1L << cell;
+                }
+                if (model.hasBeenClicked(i, j)) {
+                    clicked[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+        out.asLongBuffer().put(uncovered).put(clicked).put(flagged);
+        return out.array();
+    }
+
+    /**
+     * Applies the bitplanes of a snapshot to a model whose dots are all
+     * covered
+     */
+    private static void restore(GameModel model, ByteBuffer in) {
+        int width = model.getWidth();
+        int words = BoardCodec.words(width, model.getHeigth());
+        for (int plane = 0; plane < 3; plane++) {
+            for (int k = 0; k < words; k++) {
+                long word = in.getLong();
+                while (word != 0) {
+                    int cell = (k << 6) + Long.numberOfTrailingZeros(word);
+                    int i = cell % width;
+                    int j = cell / width;
+                    if (plane == 0) {
+                        model.uncover(i, j);
+                    }
+                    else if (plane == 1) {
+                        model.click(i, j);
+                    }
+                    else {
+                        model.flag(i, j);
+                    }
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+   /**
+     * <b>main</b> of the journal. Plays a long game with random moves,
+     * journaling every move, then recovers it and checks that the
+     * recovered game is the same. Prints the cost of recording a move,
+     * the number of fsyncs and the time taken by the recovery.
+     * The parameters are, in order and all optional: the directory, the
+     * number of moves and the snapshot interval.
+     *
+     * @param args
+     *            command line parameters
+     * @throws Exception
+     *            if the journal cannot be written or read
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "journal");
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int interval = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SNAPSHOT_INTERVAL;
+
+        // a dense board, so that most moves uncover a single dot
+        GameEngine engine = new GameEngine();
+        engine.newGame(1000, 1000, 200000, 1);
+        GameModel model = engine.getModel();
+        SplittableRandom random = new SplittableRandom(2);
+        long recording;
+        long syncs;
+        try (MoveJournal journal = new MoveJournal(directory, interval)) {
+            journal.newGame(model);
+            long start = System.nanoTime();
+            while (journal.getRecords() < moves && !engine.isOver()) {
+                int x = random.nextInt(model.getWidth());
+                int y = random.nextInt(model.getHeigth());
+                if (model.isMined(x, y)) {
+                    // flag the mines instead of exploding them
+                    if (engine.flag(x, y).getOutcome() == MoveResult.Outcome.FLAGGED) {
+                        journal.record(y * model.getWidth() + x, FLAG);
+                    }
+                }
+                else if (engine.reveal(x, y).getOutcome() != MoveResult.Outcome.IGNORED) {
+                    journal.record(y * model.getWidth() + x, REVEAL);
+                }
+            }
+            recording = System.nanoTime() - start;
+            journal.sync();
+            syncs = journal.getSyncs();
+            System.out.printf("recorded %d moves: %.3f us per move, %d fsyncs (%.1f moves per fsync)%n",
+                    journal.getRecords(), recording / 1e3 / journal.getRecords(), syncs,
+                    (double) journal.getRecords() / syncs);
+        }
+
+        try (MoveJournal journal = new MoveJournal(directory, interval)) {
+            GameEngine recovered = new GameEngine();
+            long start = System.nanoTime();
+            GameModel copy = journal.recover(recovered);
+            long recovery = System.nanoTime() - start;
+            boolean same = copy.getNumberOfSteps() == model.getNumberOfSteps()
+                    && copy.getNumberUncovered() == model.getNumberUncovered();
+            for (int j = 0; same && j < model.getHeigth(); j++) {
+                for (int i = 0; same && i < model.getWidth(); i++) {
+                    same = copy.isCovered(i, j) == model.isCovered(i, j)
+                            && copy.isFlagged(i, j) == model.isFlagged(i, j)
+                            && copy.isMined(i, j) == model.isMined(i, j);
+                }
+            }
+            System.out.printf("recovered %d moves in %.3f ms, %s%n", journal.getRecords(),
+                    recovery / 1e6, same ? "same game" : "DIFFERENT GAME");
+        }
+    }
+}
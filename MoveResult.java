@@ -0,0 +1,76 @@
+/**
+ * The class <b>MoveResult</b> describes the effect of a move played on
+ * a <b>GameEngine</b>: its outcome and the dots it changed.
+ *
+ * The engine reuses the same MoveResult for every move, so a result is
+ * only valid until the next move is played.
+ */
+
+public class MoveResult {
+
+    /**
+     * possible outcomes of a move
+     */
+    public enum Outcome {
+        /** the move had no effect (dot already uncovered, flagged, or game over) */
+        IGNORED,
+        /** a nonmined dot was uncovered, the game goes on */
+        SAFE,
+        /** a mined dot was uncovered, the game is lost */
+        MINE,
+        /** the last nonmined dot was uncovered, the game is won */
+        WON,
+        /** a flag was put on or removed from a dot */
+        FLAGGED
+    }
+
+    private Outcome outcome;
+    private GameModel gameModel;
+
+    /**
+     * Constructor, creates a result reading the changes of the given model
+     *
+     * @param gameModel
+     *            the model the moves are played on
+     */
+    MoveResult(GameModel gameModel) {
+        this.gameModel = gameModel;
+        this.outcome = Outcome.IGNORED;
+    }
+
+    /**
+     * Sets the outcome of the last move
+     */
+    void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * Getter method for the outcome of the move
+     *
+     * @return the outcome of the move
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the indices (y*width + x) of the dots changed by the move.
+     * The list is empty when <b>hasChangedAll</b> returns true.
+     *
+     * @return the dots changed by the move
+     */
+    public CellList getChangedCells() {
+        return gameModel.getChangedCells();
+    }
+
+    /**
+     * Returns true if the move changed the whole board, e.g. when a
+     * mine was uncovered and all the dots were shown
+     *
+     * @return true if every dot may have changed
+     */
+    public boolean hasChangedAll() {
+        return gameModel.hasChangedAll();
+    }
+}
@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>NoGuessGenerator</b> generates boards that can be solved
+ * by logic alone, without any guess, from a given first click.
+ *
+ * A candidate board is drawn at random, the mines around the first
+ * click are moved away so that it opens a zone, and the board is played
+ * by a <b>ConstraintSolver</b> (with a <b>ProbabilityEngine</b>, so that
+ * every safe dot that can be proven safe is found). When the solver is
+ * stuck, the board is repaired locally: a mine of the frontier is moved
+ * to a covered dot far from it, and the board is played again. After a
+ * few repairs, the candidate is dropped for a new one.
+ *
+ * Several workers search at the same time, each with its own boards;
+ * the first valid board wins and the others stop. The board returned
+ * thus depends on the timing of the threads: it can be saved with
+ * <b>BoardCodec</b>, but its seed alone does not rebuild it.
+ */
+public class NoGuessGenerator implements AutoCloseable {
+
+    /**
+     * The number of repairs tried on a candidate before drawing another one
+     */
+    static final int MAX_REPAIRS = 20;
+
+    private final ForkJoinPool pool;
+    private final int workers;
+    private final AtomicLong candidates;
+    private final AtomicLong repairs;
+    private final AtomicLong boards;
+
+    /**
+     * Constructor, creates a generator searching with the given number
+     * of worker threads
+     *
+     * @param workers
+     *            the number of worker threads
+     */
+    public NoGuessGenerator(int workers) {
+        this.pool = new ForkJoinPool(workers);
+        this.workers = workers;
+        this.candidates = new AtomicLong();
+        this.repairs = new AtomicLong();
+        this.boards = new AtomicLong();
+    }
+
+    /**
+     * Generates a board that can be solved without guessing, starting
+     * with a click on the dot at location (x,y). That dot and its
+     * neighboors are not mined.
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param numberOfMines
+     *            the number of mines of the board
+     * @param x
+     *            the x coordinate of the first click
+     * @param y
+     *            the y coordinate of the first click
+     * @param seed
+     *            the seed of the search
+     * @return a new model holding the board, every dot covered
+     */
+    public GameModel generate(int width, int heigth, int numberOfMines, int x, int y, long seed) {
+        if (numberOfMines > getMaxMines(width, heigth, x, y)) {
+            throw new IllegalArgumentException("Cannot hide " + numberOfMines + " mines in "
+                    + width + "x" + heigth + " dots and open the first click");
+        }
+        AtomicBoolean found = new AtomicBoolean();
+        List<Callable<GameModel>> searches = new ArrayList<Callable<GameModel>>();
+        for (int k = 0; k < workers; k++) {
+            SplittableRandom random = MonteCarloRunner.randomOf(seed, k);
+            searches.add(() -> search(width, heigth, numberOfMines, x, y, random, found));
+        }
+        try {
+            GameModel model = pool.invokeAny(searches);
+            boards.incrementAndGet();
+            return model;
+        } catch (InterruptedException e) {
+            found.set(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the largest number of mines a board can hide while the
+     * first click, and its neighboors, are not mined
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param x
+     *            the x coordinate of the first click
+     * @param y
+     *            the y coordinate of the first click
+     * @return the largest number of mines
+     */
+    public static int getMaxMines(int width, int heigth, int x, int y) {
+        int opening = (Math.min(x + 1, width - 1) - Math.max(x - 1, 0) + 1)
+                * (Math.min(y + 1, heigth - 1) - Math.max(y - 1, 0) + 1);
+        return width * heigth - opening;
+    }
+
+    /**
+     * Returns the number of candidate boards drawn since the generator
+     * was created
+     *
+     * @return the number of candidates
+     */
+    public long getCandidates() {
+        return candidates.get();
+    }
+
+    /**
+     * Returns the number of repairs made since the generator was created
+     *
+     * @return the number of repairs
+     */
+    public long getRepairs() {
+        return repairs.get();
+    }
+
+    /**
+     * Returns the number of boards generated since the generator was
+     * created
+     *
+     * @return the number of boards
+     */
+    public long getBoards() {
+        return boards.get();
+    }
+
+    /**
+     * Shuts down the worker threads
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Draws and repairs candidates until one of them is solved, or another
+     * worker found a board
+     */
+    private GameModel search(int width, int heigth, int numberOfMines, int x, int y,
+            SplittableRandom random, AtomicBoolean found) {
+        GameEngine engine = new GameEngine();
+        ConstraintSolver solver = new ConstraintSolver(new ProbabilityEngine(null));
+        GameModel model = null;
+        while (!found.get()) {
+            if (model == null) {
+                model = new GameModel(width, heigth, numberOfMines, random.nextLong());
+            }
+            else {
+                model.reset(random.nextLong());
+            }
+            candidates.incrementAndGet();
+            clearOpening(model, x, y, random);
+            for (int repair = 0; repair <= MAX_REPAIRS && !found.get(); repair++) {
+                if (isSolved(engine, solver, model, x, y, random)) {
+                    if (found.compareAndSet(false, true)) {
+                        model.restart();
+                        return model;
+                    }
+                    break;
+                }
+                if (repair == MAX_REPAIRS || !repair(model, random)) {
+                    break;
+                }
+                repairs.incrementAndGet();
+            }
+        }
+        // another worker won: failing keeps invokeAny from taking this as the result
+        throw new CancellationException();
+    }
+
+    /**
+     * Moves the mines of the dot at location (x,y) and of its neighboors
+     * to random dots outside of them
+     */
+    private static void clearOpening(GameModel model, int x, int y, SplittableRandom random) {
+        int width = model.getWidth();
+        int heigth = model.getHeigth();
+        for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, heigth - 1); j++) {
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                if (!model.isMined(i, j)) {
+                    continue;
+                }
+                int cell;
+                do {
+                    cell = random.nextInt(width * heigth);
+                } while (model.isMined(cell % width, cell / width)
+                        || (Math.abs(cell % width - x) <= 1 && Math.abs(cell / width - y) <= 1));
+                model.moveMine(i, j, cell % width, cell / width);
+            }
+        }
+    }
+
+    /**
+     * Plays the board from the first click with the solver, and returns
+     * true if it is won without a guess. The game is left where the
+     * solver stopped.
+     */
+    private static boolean isSolved(GameEngine engine, ConstraintSolver solver, GameModel model,
+            int x, int y, SplittableRandom random) {
+        if (model.getNumberOfSteps() > 0) {
+            model.restart();
+        }
+        engine.newGame(model);
+        engine.reveal(x, y);
+        solver.forget();
+        int width = model.getWidth();
+        while (!engine.isOver()) {
+            int cell = solver.nextMove(engine, random);
+            if (solver.getGuesses() > 0) {
+                return false;
+            }
+            engine.reveal(cell % width, cell / width);
+        }
+        return engine.isWon();
+    }
+
+    /**
+     * Moves a random mine of the frontier (covered, next to an uncovered
+     * dot) to a random covered dot away from the frontier
+     *
+     * @return false if there is no such mine or no such dot
+     */
+    private static boolean repair(GameModel model, SplittableRandom random) {
+        int width = model.getWidth();
+        int heigth = model.getHeigth();
+        int from = -1;
+        int to = -1;
+        int froms = 0;
+        int tos = 0;
+        // reservoir sampling of both dots in a single pass
+        for (int cell = 0; cell < width * heigth; cell++) {
+            int i = cell % width;
+            int j = cell / width;
+            if (!model.isCovered(i, j)) {
+                continue;
+            }
+            boolean frontier = isFrontier(model, i, j);
+            if (frontier && model.isMined(i, j) && random.nextInt(++froms) == 0) {
+                from = cell;
+            }
+            else if (!frontier && !model.isMined(i, j) && random.nextInt(++tos) == 0) {
+                to = cell;
+            }
+        }
+        if (from < 0 || to < 0) {
+            return false;
+        }
+        model.moveMine(from % width, from / width, to % width, to / width);
+        return true;
+    }
+
+    private static boolean isFrontier(GameModel model, int i, int j) {
+        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, model.getHeigth() - 1); y++) {
+            for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, model.getWidth() - 1); x++) {
+                if (!model.isCovered(x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+   /**
+     * <b>main</b> of the generator. Generates boards for several mine
+     * densities, starting from a click in the middle, and prints the
+     * acceptance rate of the candidates and the percentiles of the
+     * generation latency.
+     * The parameters are, in order and all optional: the number of
+     * boards per density, the width, the heigth, and the number of
+     * threads.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : 30;
+        int heigth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println(count + " boards per density on " + width + "x" + heigth
+                + " boards, " + threads + " threads");
+        try (NoGuessGenerator generator = new NoGuessGenerator(threads)) {
+            for (double density : MonteCarloRunner.DENSITIES) {
+                int mines = (int) Math.round(density * width * heigth);
+                long candidates = generator.getCandidates();
+                long repairs = generator.getRepairs();
+                long[] latencies = new long[count];
+                for (int k = 0; k < count; k++) {
+                    long start = System.nanoTime();
+                    generator.generate(width, heigth, mines, width / 2, heigth / 2, k);
+                    latencies[k] = System.nanoTime() - start;
+                }
+                Arrays.sort(latencies);
+                candidates = generator.getCandidates() - candidates;
+                repairs = generator.getRepairs() - repairs;
+                System.out.printf("density %.3f (%3d mines): acceptance %.2f%% (%d candidates, %d repairs),"
+                        + " latency 50%% %.1f ms, 90%% %.1f ms, 99%% %.1f ms, max %.1f ms%n",
+                        density, mines, 100.0 * count / candidates, candidates, repairs,
+                        latencies[count / 2] / 1e6, latencies[count * 9 / 10] / 1e6,
+                        latencies[count * 99 / 100] / 1e6, latencies[count - 1] / 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class <b>OffHeapBoardStorage</b> is a <b>BoardStorage</b> kept
+ * outside of the Java heap, for boards too large for it. The garbage
+ * collector never scans the board, whatever its size.
+ *
+ * Each dot takes one byte: the number of neighbooring mines in the low
+ * 4 bits, then the mined, covered, clicked and flagged bits. The bytes
+ * are held in direct buffers of at most 1 GB, either allocated in
+ * memory or mapped from a file.
+ *
+ * The memory is only released by <b>close</b>; the storage cannot be
+ * used afterwards.
+ */
+public class OffHeapBoardStorage implements BoardStorage {
+
+    static final int SEGMENT_SHIFT = 30;
+    static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    static final int COUNT = 0x0F;
+    static final int MINED = 0x10;
+    static final int COVERED = 0x20;
+    static final int CLICKED = 0x40;
+    static final int FLAGGED = 0x80;
+
+    private final int width;
+    private final int heigth;
+    private final long size;
+    private final ByteBuffer[] segments;
+    private final FileChannel channel;
+    private boolean closed;
+
+    /**
+     * Constructor, allocates a board in direct memory, with every dot
+     * covered
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     */
+    public OffHeapBoardStorage(int width, int heigth) {
+        this.width = width;
+        this.heigth = heigth;
+        this.size = checkedSize(width, heigth);
+        this.channel = null;
+        this.segments = new ByteBuffer[segmentCount(size)];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = ByteBuffer.allocateDirect(segmentSize(s)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        clear();
+    }
+
+    /**
+     * Constructor, maps a board to a file, with every dot covered. The
+     * file is created, or overwritten if it exists.
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param file
+     *            the file backing the board
+     * @throws IOException
+     *            if the file cannot be created or mapped
+     */
+    public OffHeapBoardStorage(int width, int heigth, Path file) throws IOException {
+        this.width = width;
+        this.heigth = heigth;
+        this.size = checkedSize(width, heigth);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.segments = new ByteBuffer[segmentCount(size)];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, (long) s << SEGMENT_SHIFT, segmentSize(s))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeigth() {
+        return heigth;
+    }
+
+    public boolean isMined(int cell) {
+        return (get(cell) & MINED) != 0;
+    }
+
+    public void setMined(int cell) {
+        set(cell, get(cell) | MINED);
+    }
+
+    public void clearMined(int cell) {
+        set(cell, get(cell) & ~MINED);
+    }
+
+    public int nextMined(int from) {
+        int cell = from;
+        while (cell < size) {
+            ByteBuffer segment = segment(cell);
+            int k = cell & SEGMENT_MASK;
+            int limit = segment.capacity();
+            // one byte at a time up to a multiple of 8, then 8 bytes at a time
+            for (; k < limit && (k & 7) != 0; k++) {
+                if ((segment.get(k) & MINED) != 0) {
+                    return (cell & ~SEGMENT_MASK) + k;
+                }
+            }
+            for (; k + 8 <= limit; k += 8) {
+                long mined = segment.getLong(k) & 0x1010_1010_1010_1010L;
+                if (mined != 0) {
+                    return (cell & ~SEGMENT_MASK) + k + (Long.numberOfTrailingZeros(mined) >>> 3);
+                }
+            }
+            for (; k < limit; k++) {
+                if ((segment.get(k) & MINED) != 0) {
+                    return (cell & ~SEGMENT_MASK) + k;
+                }
+            }
+            cell = (cell & ~SEGMENT_MASK) + limit;
+        }
+        return -1;
+    }
+
+    public boolean isCovered(int cell) {
+        return (get(cell) & COVERED) != 0;
+    }
+
+    public boolean uncover(int cell) {
+        int state = get(cell);
+        set(cell, state & ~COVERED);
+        return (state & COVERED) != 0;
+    }
+
+    public void uncoverAll() {
+        fill(~0x2020_2020_2020_2020L, 0L);
+    }
+
+    public boolean cover(int cell) {
+        int state = get(cell);
+        set(cell, (state | COVERED) & ~CLICKED);
+        return (state & COVERED) == 0;
+    }
+
+    public boolean hasBeenClicked(int cell) {
+        return (get(cell) & CLICKED) != 0;
+    }
+
+    public void click(int cell) {
+        set(cell, get(cell) | CLICKED);
+    }
+
+    public boolean isFlagged(int cell) {
+        return (get(cell) & FLAGGED) != 0;
+    }
+
+    public boolean toggleFlag(int cell) {
+        int state = get(cell) ^ FLAGGED;
+        set(cell, state);
+        return (state & FLAGGED) != 0;
+    }
+
+    public int getNeighbooringMines(int cell) {
+        return get(cell) & COUNT;
+    }
+
+    public void setNeighbooringMines(int cell, int neighbooringMines) {
+        set(cell, (get(cell) & ~COUNT) | neighbooringMines);
+    }
+
+    public void clear() {
+        fill(0L, 0x2020_2020_2020_2020L);
+    }
+
+    public long getMemoryUsed() {
+        return size;
+    }
+
+    /**
+     * Releases the memory of the board (or unmaps its file) right away,
+     * instead of waiting for the garbage collector.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int s = 0; s < segments.length; s++) {
+            free(segments[s]);
+            segments[s] = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot close the board file", e);
+            }
+        }
+    }
+
+    private int get(int cell) {
+        return segment(cell).get(cell & SEGMENT_MASK) & 0xFF;
+    }
+
+    private void set(int cell, int state) {
+        segment(cell).put(cell & SEGMENT_MASK, (byte) state);
+    }
+
+    private ByteBuffer segment(int cell) {
+        if (closed) {
+            throw new IllegalStateException("The board storage is closed");
+        }
+        return segments[cell >>> SEGMENT_SHIFT];
+    }
+
+    /**
+     * Sets every byte of the board to (byte & and) | or, 8 bytes at a time
+     */
+    private void fill(long and, long or) {
+        if (closed) {
+            throw new IllegalStateException("The board storage is closed");
+        }
+        for (ByteBuffer segment : segments) {
+            int limit = segment.capacity();
+            int k = 0;
+            for (; k + 8 <= limit; k += 8) {
+                segment.putLong(k, (segment.getLong(k) & and) | or);
+            }
+            for (; k < limit; k++) {
+                segment.put(k, (byte) ((segment.get(k) & and) | or));
+            }
+        }
+    }
+
+    private int segmentSize(int s) {
+        return (int) Math.min(1L << SEGMENT_SHIFT, size - ((long) s << SEGMENT_SHIFT));
+    }
+
+    private static int segmentCount(long size) {
+        return (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static long checkedSize(int width, int heigth) {
+        long size = (long) width * heigth;
+        if (width <= 0 || heigth <= 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid board size " + width + "x" + heigth);
+        }
+        return size;
+    }
+
+    /**
+     * Frees a direct or mapped buffer through sun.misc.Unsafe.invokeCleaner,
+     * the only way to do it before the buffer is garbage collected. If it
+     * is not available, the buffer is left to the garbage collector.
+     */
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not available on this JVM
+        }
+    }
+}
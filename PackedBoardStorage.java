@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * The class <b>PackedBoardStorage</b> is the default <b>BoardStorage</b>.
+ * The mined, covered, clicked and flagged states are kept as bitplanes (one bit
+ * per dot, 64 dots per <b>long</b>) and the number of neighbooring mines
+ * is kept in a <b>byte</b> array, so a board is stored in four primitive
+ * arrays instead of one object per dot.
+ */
+
+public class PackedBoardStorage implements BoardStorage {
+
+    private final int width;
+    private final int heigth;
+    private final int size;
+    private final long[] mined;
+    private final long[] covered;
+    private final long[] clicked;
+    private final long[] flagged;
+    private final byte[] neighbooringMines;
+
+    /**
+     * Constructor, allocates a board of the given size with every dot
+     * covered.
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     */
+    public PackedBoardStorage(int width, int heigth) {
+        this.width = width;
+        this.heigth = heigth;
+        this.size = width * heigth;
+        int words = (size + 63) >>> 6;
+        mined = new long[words];
+        covered = new long[words];
+        clicked = new long[words];
+        flagged = new long[words];
+        neighbooringMines = new byte[size];
+        clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeigth() {
+        return heigth;
+    }
+
+    public boolean isMined(int cell) {
+        return (mined[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public void setMined(int cell) {
+        mined[cell >>> 6] |= 1L << cell;
+    }
+
+    public void clearMined(int cell) {
+        mined[cell >>> 6] &= ~(1L << cell);
+    }
+
+    public int nextMined(int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int k = from >>> 6;
+        long word = mined[k] & (-1L << from);
+        while (word == 0) {
+            if (++k == mined.length) {
+                return -1;
+            }
+            word = mined[k];
+        }
+        return (k << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    public boolean isCovered(int cell) {
+        return (covered[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean uncover(int cell) {
+        long bit = 1L << cell;
+        long word = covered[cell >>> 6];
+        covered[cell >>> 6] = word & ~bit;
+        return (word & bit) != 0;
+    }
+
+    public void uncoverAll() {
+        Arrays.fill(covered, 0L);
+    }
+
+    public boolean cover(int cell) {
+        long bit = 1L << cell;
+        long word = covered[cell >>> 6];
+        covered[cell >>> 6] = word | bit;
+        clicked[cell >>> 6] &= ~bit;
+        return (word & bit) == 0;
+    }
+
+    public boolean hasBeenClicked(int cell) {
+        return (clicked[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public void click(int cell) {
+        clicked[cell >>> 6] |= 1L << cell;
+    }
+
+    public boolean isFlagged(int cell) {
+        return (flagged[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean toggleFlag(int cell) {
+        flagged[cell >>> 6] ^= 1L << cell;
+        return isFlagged(cell);
+    }
+
+    public int getNeighbooringMines(int cell) {
+        return neighbooringMines[cell];
+    }
+
+    public void setNeighbooringMines(int cell, int neighbooringMines) {
+        this.neighbooringMines[cell] = (byte) neighbooringMines;
+    }
+
+    public void clear() {
+        Arrays.fill(mined, 0L);
+        Arrays.fill(clicked, 0L);
+        Arrays.fill(flagged, 0L);
+        Arrays.fill(neighbooringMines, (byte) 0);
+        Arrays.fill(covered, -1L);
+        // the bits past the last dot stay cleared
+        if ((size & 63) != 0) {
+            covered[covered.length - 1] = (1L << size) - 1;
+        }
+    }
+
+    public long getMemoryUsed() {
+        return 4L * arrayBytes(8L * mined.length) + arrayBytes(neighbooringMines.length);
+    }
+
+    public void close() {
+        // the arrays are left to the garbage collector
+    }
+
+    /**
+     * Size of a primitive array on a 64 bits JVM: a 16 bytes header,
+     * then the data rounded up to 8 bytes.
+     */
+    private static long arrayBytes(long dataBytes) {
+        return 16 + ((dataBytes + 7) & ~7L);
+    }
+}
@@ -0,0 +1,733 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The class <b>ProbabilityEngine</b> computes the exact probability of
+ * each covered dot of a game to be mined, knowing the uncovered dots.
+ *
+ * The covered dots next to an uncovered one (the frontier) are split in
+ * independent components: two dots are in the same component if they
+ * are both neighboors of the same uncovered dot. The solutions of each
+ * component are enumerated by backtracking, and counted by number of
+ * mines. The components are then combined, each total number of mines
+ * on the frontier being weighted by the number of ways to place the
+ * remaining mines on the other covered dots (a binomial coefficient,
+ * computed in log space so that it never overflows).
+ *
+ * Large components are enumerated in parallel on a ForkJoinPool. The
+ * solutions of a component are kept until the next query, so the
+ * components the last move did not touch are not enumerated again.
+ *
+ * An engine is used by a single thread at a time.
+ */
+public class ProbabilityEngine {
+
+    /**
+     * Components with fewer dots are enumerated by the calling thread
+     */
+    static final int PARALLEL_THRESHOLD = 12;
+
+    private final ForkJoinPool pool;
+    private Map<Signature, Solutions> cache;
+    private int width;
+    private int heigth;
+    private double[] probabilities;
+    private boolean[] covered;
+    private int[] parent;
+    private int[] componentOf;
+    private double[] logFactorial;
+    private int cacheHits;
+    private int cacheMisses;
+
+    /**
+     * Constructor, creates an engine enumerating large components on the
+     * common ForkJoinPool
+     */
+    public ProbabilityEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor, creates an engine enumerating large components on the
+     * given pool
+     *
+     * @param pool
+     *            the pool, or null to enumerate every component in the
+     *            calling thread
+     */
+    public ProbabilityEngine(ForkJoinPool pool) {
+        this.pool = pool;
+        this.cache = new HashMap<Signature, Solutions>();
+        this.logFactorial = new double[1];
+    }
+
+    /**
+     * Computes the probability of each dot of the board to be mined. The
+     * probability of an uncovered dot is 0.
+     *
+     * @param model
+     *            the model of a game not lost
+     * @return the probabilities, indexed by y*width + x; the array is
+     *         reused by the next query
+     */
+    public double[] compute(GameModel model) {
+        width = model.getWidth();
+        heigth = model.getHeigth();
+        int cells = width * heigth;
+        if (probabilities == null || probabilities.length != cells) {
+            probabilities = new double[cells];
+            covered = new boolean[cells];
+            parent = new int[cells];
+            componentOf = new int[cells];
+        }
+        if (logFactorial.length <= cells) {
+            logFactorial = logFactorials(cells);
+        }
+
+        // the constraints, and the components of the frontier
+        Arrays.fill(parent, -1);
+        List<int[]> constraints = new ArrayList<int[]>();
+        int numberCovered = 0;
+        int[] neighboors = new int[8];
+        for (int cell = 0; cell < cells; cell++) {
+            int i = cell % width;
+            int j = cell / width;
+            covered[cell] = model.isCovered(i, j);
+            if (covered[cell]) {
+                numberCovered++;
+                continue;
+            }
+            int count = coveredNeighboors(model, i, j, neighboors);
+            if (count == 0) {
+                continue;
+            }
+            // constraint: the uncovered dot, its number, then its covered neighboors
+            int[] constraint = new int[count + 2];
+            constraint[0] = cell;
+            constraint[1] = model.getNeighbooringMines(i, j);
+            for (int k = 0; k < count; k++) {
+                constraint[k + 2] = neighboors[k];
+                if (parent[neighboors[k]] < 0) {
+                    parent[neighboors[k]] = neighboors[k];
+                }
+                union(neighboors[0], neighboors[k]);
+            }
+            constraints.add(constraint);
+        }
+
+        // the root of a component is its smallest dot, so it comes first
+        List<Component> components = new ArrayList<Component>();
+        int frontier = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (parent[cell] >= 0) {
+                frontier++;
+                int root = find(cell);
+                if (root == cell) {
+                    componentOf[cell] = components.size();
+                    components.add(new Component());
+                }
+                components.get(componentOf[root]).cells.add(cell);
+            }
+        }
+        for (int[] constraint : constraints) {
+            components.get(componentOf[find(constraint[2])]).constraints.add(constraint);
+        }
+
+        // the solutions of each component, from the cache or enumerated
+        Map<Signature, Solutions> solved = new HashMap<Signature, Solutions>();
+        for (Component component : components) {
+            component.signature = Signature.of(component);
+            component.solutions = cache.get(component.signature);
+            if (component.solutions != null) {
+                cacheHits++;
+            }
+            else {
+                cacheMisses++;
+                if (pool != null && component.cells.size() >= PARALLEL_THRESHOLD) {
+                    component.task = ForkJoinTask.adapt(() -> enumerate(component));
+                    pool.execute(component.task);
+                }
+                else {
+                    component.solutions = enumerate(component);
+                }
+            }
+        }
+        for (Component component : components) {
+            if (component.task != null) {
+                component.solutions = component.task.join();
+            }
+            solved.put(component.signature, component.solutions);
+        }
+        cache = solved;
+
+        combine(components, numberCovered - frontier, model.getNumberOfMines());
+        return probabilities;
+    }
+
+    /**
+     * Returns the number of components found in the cache since the
+     * engine was created
+     *
+     * @return the number of cache hits
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of components enumerated since the engine was
+     * created
+     *
+     * @return the number of cache misses
+     */
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Combines the solutions of the components into the probabilities
+     */
+    private void combine(List<Component> components, int interior, int numberOfMines) {
+        int n = components.size();
+        // prefix[c] counts the solutions of components 0..c-1 by number of mines, suffix[c] of c..n-1
+        double[][] prefix = new double[n + 1][];
+        double[][] suffix = new double[n + 1][];
+        prefix[0] = new double[] {1};
+        suffix[n] = new double[] {1};
+        for (int c = 0; c < n; c++) {
+            prefix[c + 1] = convolve(prefix[c], components.get(c).solutions.weights);
+        }
+        for (int c = n - 1; c >= 0; c--) {
+            suffix[c] = convolve(components.get(c).solutions.weights, suffix[c + 1]);
+        }
+        double[] total = prefix[n];
+
+        // binomial[k]: the ways to place the mines left by k frontier mines on the interior, scaled
+        double[] binomial = new double[total.length];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < total.length; k++) {
+            int left = numberOfMines - k;
+            if (total[k] > 0 && left >= 0 && left <= interior) {
+                max = Math.max(max, logBinomial(interior, left));
+            }
+        }
+        double sum = 0;
+        double interiorMines = 0;
+        for (int k = 0; k < total.length; k++) {
+            int left = numberOfMines - k;
+            if (total[k] > 0 && left >= 0 && left <= interior) {
+                binomial[k] = Math.exp(logBinomial(interior, left) - max);
+                sum += total[k] * binomial[k];
+                interiorMines += total[k] * binomial[k] * left;
+            }
+        }
+        if (sum == 0) {
+            throw new IllegalStateException("The board has no solution");
+        }
+
+        double interiorProbability = interior == 0 ? 0 : interiorMines / sum / interior;
+        Arrays.fill(probabilities, 0);
+        for (int cell = 0; cell < probabilities.length; cell++) {
+            if (parent[cell] < 0 && covered[cell]) {
+                probabilities[cell] = interiorProbability;
+            }
+        }
+
+        for (int c = 0; c < n; c++) {
+            Solutions solutions = components.get(c).solutions;
+            double[] others = convolve(prefix[c], suffix[c + 1]);
+            for (int a = 0; a < solutions.weights.length; a++) {
+                if (solutions.weights[a] == 0) {
+                    continue;
+                }
+                // the weight of a solution of the component with a mines
+                double weight = 0;
+                for (int b = 0; b < others.length && a + b < binomial.length; b++) {
+                    weight += others[b] * binomial[a + b];
+                }
+                double[] row = solutions.cellWeights[a];
+                for (int x = 0; x < row.length; x++) {
+                    probabilities[solutions.cells[x]] += row[x] * weight / sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the covered neighboors of (i,j) in cells, and returns how
+     * many there are
+     */
+    private int coveredNeighboors(GameModel model, int i, int j, int[] cells) {
+        int count = 0;
+        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, heigth - 1); y++) {
+            for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, width - 1); x++) {
+                if (model.isCovered(x, y)) {
+                    cells[count++] = y * width + x;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int find(int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private double logBinomial(int n, int k) {
+        return logFactorial[n] - logFactorial[k] - logFactorial[n - k];
+    }
+
+    private static double[] logFactorials(int n) {
+        double[] table = new double[n + 1];
+        for (int k = 1; k <= n; k++) {
+            table[k] = table[k - 1] + Math.log(k);
+        }
+        return table;
+    }
+
+    private static double[] convolve(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int x = 0; x < a.length; x++) {
+            if (a[x] != 0) {
+                for (int y = 0; y < b.length; y++) {
+                    result[x + y] += a[x] * b[y];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Enumerates the solutions of a component by backtracking.
+     *
+     * The dots with the same constraints are interchangeable: they are
+     * enumerated as one group, k mines among g dots counting for
+     * (g choose k) solutions. The groups are assigned in breadth first
+     * order, and what is left to solve only depends on the mines of the
+     * constraints both assigned and not assigned yet: the solutions of
+     * each such state are memoised.
+     */
+    static Solutions enumerate(Component component) {
+        int n = component.cells.size();
+        int[] cells = component.cells.toArray();
+        int m = component.constraints.size();
+
+        // the constraints of each dot, the dots being numbered in the component
+        List<CellList> byCell = new ArrayList<CellList>();
+        for (int x = 0; x < n; x++) {
+            byCell.add(new CellList(4));
+        }
+        int[] values = new int[m];
+        int[] unassigned = new int[m];
+        for (int c = 0; c < m; c++) {
+            int[] constraint = component.constraints.get(c);
+            values[c] = constraint[1];
+            unassigned[c] = constraint.length - 2;
+            for (int k = 2; k < constraint.length; k++) {
+                byCell.get(Arrays.binarySearch(cells, constraint[k])).add(c);
+            }
+        }
+
+        // the groups of dots with the same constraints
+        Map<Signature, Integer> groupOf = new HashMap<Signature, Integer>();
+        List<int[]> groupConstraints = new ArrayList<int[]>();
+        int[] cellGroup = new int[n];
+        for (int x = 0; x < n; x++) {
+            int[] owners = byCell.get(x).toArray();
+            Signature signature = new Signature(owners);
+            Integer group = groupOf.get(signature);
+            if (group == null) {
+                group = groupConstraints.size();
+                groupOf.put(signature, group);
+                groupConstraints.add(owners);
+            }
+            cellGroup[x] = group;
+        }
+        int groups = groupConstraints.size();
+        int[] sizes = new int[groups];
+        for (int x = 0; x < n; x++) {
+            sizes[cellGroup[x]]++;
+        }
+
+        // the groups in breadth first order, so that the constraints fill up early
+        List<CellList> groupsOf = new ArrayList<CellList>();
+        for (int c = 0; c < m; c++) {
+            groupsOf.add(new CellList(4));
+        }
+        for (int g = 0; g < groups; g++) {
+            for (int c : groupConstraints.get(g)) {
+                groupsOf.get(c).add(g);
+            }
+        }
+        int[] order = new int[groups];
+        int[] position = new int[groups];
+        Arrays.fill(position, -1);
+        int head = 0;
+        int tail = 0;
+        order[tail++] = 0;
+        position[0] = 0;
+        while (head < tail) {
+            for (int c : groupConstraints.get(order[head++])) {
+                CellList next = groupsOf.get(c);
+                for (int k = 0; k < next.size(); k++) {
+                    int g = next.get(k);
+                    if (position[g] < 0) {
+                        position[g] = tail;
+                        order[tail++] = g;
+                    }
+                }
+            }
+        }
+
+        // open[d]: the constraints with groups both before and from position d
+        int[] first = new int[m];
+        int[] last = new int[m];
+        Arrays.fill(first, groups);
+        for (int g = 0; g < groups; g++) {
+            for (int c : groupConstraints.get(g)) {
+                first[c] = Math.min(first[c], position[g]);
+                last[c] = Math.max(last[c], position[g]);
+            }
+        }
+        List<CellList> openAt = new ArrayList<CellList>();
+        for (int d = 0; d < groups; d++) {
+            openAt.add(new CellList(8));
+        }
+        for (int c = 0; c < m; c++) {
+            for (int d = first[c] + 1; d <= last[c]; d++) {
+                openAt.get(d).add(c);
+            }
+        }
+        int[][] open = new int[groups][];
+        for (int d = 0; d < groups; d++) {
+            open[d] = openAt.get(d).toArray();
+        }
+
+        int[][] ordered = new int[groups][];
+        int[] orderedSizes = new int[groups];
+        for (int d = 0; d < groups; d++) {
+            ordered[d] = groupConstraints.get(order[d]);
+            orderedSizes[d] = sizes[order[d]];
+        }
+        Partial root = new Search(ordered, orderedSizes, open, values, unassigned).solve(0);
+
+        double[] weights = new double[n + 1];
+        double[][] cellWeights = new double[n + 1][n];
+        if (root != null) {
+            for (int k = 0; k < root.weights.length; k++) {
+                weights[root.min + k] = root.weights[k];
+                for (int x = 0; x < n; x++) {
+                    int g = cellGroup[x];
+                    cellWeights[root.min + k][x] = root.get(k, position[g]) / sizes[g];
+                }
+            }
+        }
+        Solutions solutions = new Solutions(cells, weights, cellWeights);
+        solutions.normalize();
+        return solutions;
+    }
+
+   /**
+     * <b>main</b> of the engine. Plays games with a <b>ConstraintSolver</b>
+     * guessing with the engine, computes the probabilities at every move,
+     * and prints the latency of the queries and the win rate.
+     * The parameters are, in order and all optional: the number of
+     * games, the width, the heigth and the number of mines.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int width = args.length > 3 ? Integer.parseInt(args[1]) : 30;
+        int heigth = args.length > 3 ? Integer.parseInt(args[2]) : 16;
+        int numberOfMines = args.length > 3 ? Integer.parseInt(args[3]) : 99;
+
+        ProbabilityEngine probabilityEngine = new ProbabilityEngine();
+        ConstraintSolver solver = new ConstraintSolver(probabilityEngine);
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(42);
+        long[] latencies = new long[1 << 16];
+        int queries = 0;
+        long total = 0;
+        int won = 0;
+        for (int game = 0; game < games; game++) {
+            engine.newGame(width, heigth, numberOfMines, random.nextLong());
+            while (!engine.isOver()) {
+                long start = System.nanoTime();
+                probabilityEngine.compute(engine.getModel());
+                long nanos = System.nanoTime() - start;
+                total += nanos;
+                if (queries == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, 2 * queries);
+                }
+                latencies[queries++] = nanos;
+                int cell = solver.nextMove(engine, random);
+                engine.reveal(cell % width, cell / width);
+            }
+            if (engine.isWon()) {
+                won++;
+            }
+        }
+        Arrays.sort(latencies, 0, queries);
+        System.out.printf("%d games %dx%d with %d mines: won %.2f%%%n",
+                games, width, heigth, numberOfMines, 100.0 * won / games);
+        System.out.printf("%d queries: mean %.1f us, median %.1f us, 99%% %.1f us, max %.1f us%n",
+                queries, total / 1e3 / queries, latencies[queries / 2] / 1e3,
+                latencies[(int) (queries * 0.99)] / 1e3, latencies[queries - 1] / 1e3);
+        System.out.printf("components: %d from the cache, %d enumerated%n",
+                probabilityEngine.getCacheHits(), probabilityEngine.getCacheMisses());
+    }
+
+    /**
+     * The class <b>Search</b> assigns a number of mines to each group in
+     * turn, and stops as soon as a constraint cannot be met
+     */
+    private static class Search {
+
+        private static final Partial NONE = new Partial(0, 0, 0);
+        private static final Partial LEAF = new Partial(0, 1, 0);
+        private static final int[][] CHOOSE = new int[9][9];
+
+        static {
+            for (int g = 0; g < CHOOSE.length; g++) {
+                CHOOSE[g][0] = 1;
+                for (int k = 1; k <= g; k++) {
+                    CHOOSE[g][k] = CHOOSE[g - 1][k - 1] + CHOOSE[g - 1][k];
+                }
+            }
+            LEAF.weights[0] = 1;
+        }
+
+        private final int[][] constraintsOf;
+        private final int[] sizes;
+        private final int[][] open;
+        private final int[] values;
+        private final int[] unassigned;
+        private final int[] mines;
+        private final Map<Signature, Partial> memo;
+
+        Search(int[][] constraintsOf, int[] sizes, int[][] open, int[] values, int[] unassigned) {
+            this.constraintsOf = constraintsOf;
+            this.sizes = sizes;
+            this.open = open;
+            this.values = values;
+            this.unassigned = unassigned;
+            this.mines = new int[values.length];
+            this.memo = new HashMap<Signature, Partial>();
+        }
+
+        /**
+         * Returns the solutions of the groups from position depth on,
+         * or null if there are none
+         */
+        Partial solve(int depth) {
+            if (depth == sizes.length) {
+                return LEAF;
+            }
+            int[] key = new int[open[depth].length + 1];
+            key[0] = depth;
+            for (int k = 0; k < open[depth].length; k++) {
+                key[k + 1] = mines[open[depth][k]];
+            }
+            Signature signature = new Signature(key);
+            Partial result = memo.get(signature);
+            if (result != null) {
+                return result == NONE ? null : result;
+            }
+
+            int size = sizes[depth];
+            int[] owners = constraintsOf[depth];
+            Partial[] rests = new Partial[size + 1];
+            int min = Integer.MAX_VALUE;
+            int max = -1;
+            for (int value = 0; value <= size; value++) {
+                boolean possible = true;
+                for (int c : owners) {
+                    mines[c] += value;
+                    unassigned[c] -= size;
+                    if (mines[c] > values[c] || mines[c] + unassigned[c] < values[c]) {
+                        possible = false;
+                    }
+                }
+                Partial rest = possible ? solve(depth + 1) : null;
+                for (int c : owners) {
+                    mines[c] -= value;
+                    unassigned[c] += size;
+                }
+                if (rest != null) {
+                    rests[value] = rest;
+                    min = Math.min(min, rest.min + value);
+                    max = Math.max(max, rest.min + rest.weights.length - 1 + value);
+                }
+            }
+            if (max >= 0) {
+                result = new Partial(min, max - min + 1, sizes.length - depth);
+                for (int value = 0; value <= size; value++) {
+                    if (rests[value] != null) {
+                        result.add(rests[value], value, CHOOSE[size][value]);
+                    }
+                }
+            }
+            memo.put(signature, result == null ? NONE : result);
+            return result;
+        }
+    }
+
+    /**
+     * The class <b>Partial</b> counts the solutions of the groups from a
+     * position on, by number of mines (from min on), and for each group
+     * the mines it holds over these solutions
+     */
+    private static class Partial {
+
+        final int min;
+        final int groups;
+        final double[] weights;
+        final double[] groupWeights;
+
+        Partial(int min, int length, int groups) {
+            this.min = min;
+            this.groups = groups;
+            this.weights = new double[length];
+            this.groupWeights = new double[length * groups];
+        }
+
+        /**
+         * Returns the mines held by group g over the solutions with
+         * min + k mines
+         */
+        double get(int k, int g) {
+            return groupWeights[k * groups + g];
+        }
+
+        /**
+         * Adds the solutions where the first group holds value mines,
+         * counting for ways solutions each, followed by those of rest
+         */
+        void add(Partial rest, int value, int ways) {
+            int shift = rest.min + value - min;
+            for (int a = 0; a < rest.weights.length; a++) {
+                double weight = ways * rest.weights[a];
+                if (weight == 0) {
+                    continue;
+                }
+                weights[a + shift] += weight;
+                int row = (a + shift) * groups;
+                groupWeights[row] += weight * value;
+                int restRow = a * rest.groups;
+                for (int g = 0; g < rest.groups; g++) {
+                    groupWeights[row + g + 1] += ways * rest.groupWeights[restRow + g];
+                }
+            }
+        }
+    }
+
+    /**
+     * The class <b>Solutions</b> counts the solutions of a component by
+     * number of mines, and for each dot the solutions where it is mined
+     */
+    static class Solutions {
+
+        final int[] cells;
+        final double[] weights;
+        final double[][] cellWeights;
+
+        Solutions(int[] cells, double[] weights, double[][] cellWeights) {
+            this.cells = cells;
+            this.weights = weights;
+            this.cellWeights = cellWeights;
+        }
+
+        /**
+         * Scales the counts so that the largest one is 1: only ratios
+         * matter, and the products of many components stay in range
+         */
+        void normalize() {
+            double max = 0;
+            for (double weight : weights) {
+                max = Math.max(max, weight);
+            }
+            if (max == 0) {
+                return;
+            }
+            for (int a = 0; a < weights.length; a++) {
+                weights[a] /= max;
+                for (int x = 0; x < cells.length; x++) {
+                    cellWeights[a][x] /= max;
+                }
+            }
+        }
+    }
+
+    /**
+     * The class <b>Component</b> holds the dots and the constraints of a
+     * component of the frontier
+     */
+    static class Component {
+
+        final CellList cells = new CellList(16);
+        final List<int[]> constraints = new ArrayList<int[]>();
+        Signature signature;
+        Solutions solutions;
+        ForkJoinTask<Solutions> task;
+    }
+
+    /**
+     * The class <b>Signature</b> is an array of ints usable as a key. It
+     * identifies a component by its constraints (two components with the
+     * same signature have the same solutions), a group of dots, or a
+     * state of the search.
+     */
+    static class Signature {
+
+        private final int[] data;
+        private final int hash;
+
+        Signature(int[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        static Signature of(Component component) {
+            int size = 0;
+            for (int[] constraint : component.constraints) {
+                size += constraint.length + 1;
+            }
+            int[] data = new int[size];
+            int k = 0;
+            for (int[] constraint : component.constraints) {
+                data[k++] = constraint.length;
+                System.arraycopy(constraint, 0, data, k, constraint.length);
+                k += constraint.length;
+            }
+            return new Signature(data);
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Signature && Arrays.equals(data, ((Signature) other).data);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.SplittableRandom;
+
+/**
+ * A Strategy chooses the moves of an automatic player. It is asked
+ * for one move at a time, and can look at the board through the
+ * engine's model (the dots changed by the previous move are still
+ * available there, see <b>GameModel.getChangedCells</b>).
+ *
+ * A Strategy is used by a single thread at a time, and may keep
+ * state from one move to the next. A new game has started when the
+ * model's number of steps is 0.
+ */
+
+public interface Strategy {
+
+    /**
+     * Chooses the next dot to uncover.
+     *
+     * @param engine the engine of the game being played, not over yet
+     * @param random the random stream of the game being played
+     * @return the index (y*width + x) of a covered dot to uncover
+     */
+
+    public abstract int nextMove( GameEngine engine, SplittableRandom random );
+
+}
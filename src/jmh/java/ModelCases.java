@@ -0,0 +1,124 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import benchmarks.BoardCase;
+
+/**
+ * The class <b>ModelCases</b> holds the cases measured by
+ * <b>benchmarks.ModelBenchmarks</b>. It is in the default package, with
+ * the game, which the benchmarks cannot name.
+ */
+public class ModelCases {
+
+    /**
+     * Creates a case, on a new board with mines placed from seed 1
+     *
+     * @param name
+     *            the name of the case
+     * @param size
+     *            the side of the board
+     * @param density
+     *            the density of mines
+     * @return the case
+     */
+    public static BoardCase create(String name, int size, double density) {
+        GameModel model = new GameModel(size, size, (int) (density * size * size), 1);
+        switch (name) {
+            case "construct":
+                return new BoardCase() {
+                    long seed;
+                    public void run(Blackhole blackhole) {
+                        blackhole.consume(new GameModel(model.getWidth(), model.getHeigth(),
+                                model.getNumberOfMines(), seed++));
+                    }
+                };
+            case "reset":
+                return blackhole -> model.reset();
+            case "getNeighbooringMines":
+                return blackhole -> {
+                    int sum = 0;
+                    for (int j = 0; j < model.getHeigth(); j++) {
+                        for (int i = 0; i < model.getWidth(); i++) {
+                            sum += model.getNeighbooringMines(i, j);
+                        }
+                    }
+                    blackhole.consume(sum);
+                };
+            case "uncover":
+                return new BoardCase() {
+                    public void setup() {
+                        model.reset();
+                    }
+                    public void run(Blackhole blackhole) {
+                        for (int j = 0; j < model.getHeigth(); j++) {
+                            for (int i = 0; i < model.getWidth(); i++) {
+                                model.uncover(i, j);
+                            }
+                        }
+                        blackhole.consume(model.getNumberUncovered());
+                    }
+                };
+            case "clearZone":
+                return new BoardCase() {
+                    int blank;
+                    public void setup() {
+                        model.reset();
+                        blank = findBlank(model);
+                    }
+                    public void run(Blackhole blackhole) {
+                        int width = model.getWidth();
+                        blackhole.consume(model.clearZone(blank % width, blank / width).size());
+                    }
+                };
+            case "isFinished":
+                return blackhole -> blackhole.consume(model.isFinished());
+            case "viewUpdate":
+                return new BoardCase() {
+                    ChangeSet.Snapshot snapshot = new ChangeSet.Snapshot(size, size);
+                    public void setup() {
+                        model.reset();
+                        model.clearChanges();
+                        int blank = findBlank(model);
+                        model.clearZone(blank % model.getWidth(), blank / model.getWidth());
+                    }
+                    public void run(Blackhole blackhole) {
+                        // what GameView.update() does, without the buttons
+                        blackhole.consume(ChangeSet.of(model, snapshot));
+                        model.clearChanges();
+                    }
+                };
+            case "undoRedo":
+                model.setHistoryEnabled(true);
+                model.step();
+                int blank = findBlank(model);
+                model.clearZone(blank % model.getWidth(), blank / model.getWidth());
+                return blackhole -> {
+                    // the cascade is covered again, then uncovered
+                    blackhole.consume(model.undo());
+                    blackhole.consume(model.redo());
+                    model.clearChanges();
+                };
+            default:
+                throw new IllegalArgumentException("Unknown case " + name);
+        }
+    }
+
+    /**
+     * Finds a blank, nonmined dot, starting from the center of the board
+     *
+     * @return the index of the dot, or the center if there is none
+     */
+    static int findBlank(GameModel model) {
+        int width = model.getWidth();
+        int cells = width * model.getHeigth();
+        int center = (model.getHeigth() / 2) * width + width / 2;
+        for (int k = 0; k < cells; k++) {
+            int cell = (center + k) % cells;
+            int i = cell % width;
+            int j = cell / width;
+            if (!model.isMined(i, j) && model.isBlank(i, j)) {
+                return cell;
+            }
+        }
+        return center;
+    }
+}
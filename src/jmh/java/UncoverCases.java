@@ -0,0 +1,57 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import benchmarks.BoardCase;
+
+/**
+ * The class <b>UncoverCases</b> holds the cases measured by
+ * <b>benchmarks.UncoverBenchmark</b>, on a 2000x2000 board without
+ * mines. It is in the default package, with the game, which the
+ * benchmarks cannot name.
+ */
+public class UncoverCases {
+
+    static int SIZE = 2000;
+
+    /**
+     * Creates a case
+     *
+     * @param name
+     *            the name of the case
+     * @param side
+     *            the side of the region uncovered (unused by the
+     *            cascade, which starts from the center of the board)
+     * @param density
+     *            unused, the board has no mine
+     * @return the case
+     */
+    public static BoardCase create(String name, int side, double density) {
+        GameModel model = new GameModel(SIZE, SIZE, 0);
+        switch (name) {
+            case "uncoverRegion":
+                return new BoardCase() {
+                    public void setup() {
+                        model.reset();
+                    }
+                    public void run(Blackhole blackhole) {
+                        for (int j = 0; j < side; j++) {
+                            for (int i = 0; i < side; i++) {
+                                model.uncover(i, j);
+                            }
+                        }
+                        blackhole.consume(model.getNumberUncovered());
+                    }
+                };
+            case "clearZone":
+                return new BoardCase() {
+                    public void setup() {
+                        model.reset();
+                    }
+                    public void run(Blackhole blackhole) {
+                        blackhole.consume(model.clearZone(SIZE / 2, SIZE / 2).size());
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown case " + name);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The interface <b>BoardCase</b> is one benchmarked case, working on
+ * the classes of the game. JMH only runs benchmarks declared in a
+ * package, and the game is in the default package, which no package can
+ * name: the cases are written in the default package (see
+ * <b>ModelCases</b> and <b>UncoverCases</b>) and loaded by name.
+ */
+public interface BoardCase {
+
+    /**
+     * Prepares the next invocation, for the cases that change the board.
+     * Not measured.
+     */
+    default void setup() {
+    }
+
+    /**
+     * Runs the case once
+     *
+     * @param blackhole
+     *            receives the results, so that the JIT cannot remove the
+     *            code computing them
+     */
+    void run(Blackhole blackhole);
+
+    /**
+     * Creates a case of a class of the default package, from its static
+     * method create(String, int, double)
+     *
+     * @param cases
+     *            the name of the class of the cases
+     * @param name
+     *            the name of the case, the name of its benchmark method
+     * @param size
+     *            the side of the board
+     * @param density
+     *            the density of mines
+     * @return the case
+     */
+    static BoardCase create(String cases, String name, int size, double density) {
+        try {
+            return (BoardCase) Class.forName(cases).getMethod("create", String.class, int.class, double.class)
+                    .invoke(null, name, size, density);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create the case " + cases + "." + name, e);
+        }
+    }
+}
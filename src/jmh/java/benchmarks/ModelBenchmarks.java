@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The class <b>ModelBenchmarks</b> measures the hot paths of the game:
+ * building a <b>GameModel</b>, resetting it, reading the neighbooring
+ * mines, uncovering dots, the cascade of <b>clearZone</b>,
+ * <b>isFinished</b>, the work done by <b>GameView.update</b> (computing
+ * the icons of the changed dots), and undo/redo, without opening any
+ * window.
+ *
+ * Every case is run for each board size and each mine density, so the
+ * results can be compared from one change of the model to the next.
+ * The cases that change the board get a fresh board before every
+ * invocation, outside of the measure.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class ModelBenchmarks {
+
+    @Param({"16", "256", "1024", "4096"})
+    int size;
+
+    @Param({"0.05", "0.15", "0.20"})
+    double density;
+
+    private BoardCase boardCase;
+
+    /**
+     * Creates the case of the benchmark being run, on a new board
+     *
+     * @param params
+     *            the parameters of the benchmark
+     */
+    @Setup(Level.Trial)
+    public void create(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        boardCase = BoardCase.create("ModelCases", benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                size, density);
+    }
+
+    /**
+     * Prepares the board before every invocation, for the cases that
+     * change it
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        @Setup(Level.Invocation)
+        public void prepare(ModelBenchmarks benchmarks) {
+            benchmarks.boardCase.setup();
+        }
+    }
+
+    @Benchmark
+    public void construct(Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void reset(Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void getNeighbooringMines(Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void uncover(Fresh fresh, Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void clearZone(Fresh fresh, Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void isFinished(Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void viewUpdate(Fresh fresh, Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void undoRedo(Blackhole blackhole) {
+        boardCase.run(blackhole);
+    }
+}
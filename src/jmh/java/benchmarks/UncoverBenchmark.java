@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The class <b>UncoverBenchmark</b> measures the cost of uncovering a
+ * square region of a 2000x2000 board without mines, dot by dot, through
+ * <b>GameModel.uncover</b>. Since the model keeps its counters up to
+ * date on every covered to uncovered transition, the time per dot
+ * should stay flat when the region grows.
+ * It also measures a blank click cascading through the whole board
+ * with <b>GameModel.clearZone</b>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class UncoverBenchmark {
+
+    /**
+     * A board covered again before every invocation, on which a region
+     * is uncovered
+     */
+    @State(Scope.Thread)
+    public static class Region {
+
+        /**
+         * the side of the region uncovered
+         */
+        @Param({"10", "100", "500", "1000", "2000"})
+        int side;
+
+        private BoardCase boardCase;
+
+        @Setup(Level.Trial)
+        public void create() {
+            boardCase = BoardCase.create("UncoverCases", "uncoverRegion", side, 0);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            boardCase.setup();
+        }
+    }
+
+    /**
+     * A board covered again before every invocation, on which the whole
+     * board is uncovered by a cascade
+     */
+    @State(Scope.Thread)
+    public static class Board {
+
+        private BoardCase boardCase;
+
+        @Setup(Level.Trial)
+        public void create() {
+            boardCase = BoardCase.create("UncoverCases", "clearZone", 2000, 0);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            boardCase.setup();
+        }
+    }
+
+    @Benchmark
+    public void uncoverRegion(Region region, Blackhole blackhole) {
+        region.boardCase.run(blackhole);
+    }
+
+    @Benchmark
+    public void clearZone(Board board, Blackhole blackhole) {
+        board.boardCase.run(blackhole);
+    }
+}